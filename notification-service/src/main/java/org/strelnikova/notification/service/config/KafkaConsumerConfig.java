@@ -31,6 +31,8 @@ public class KafkaConsumerConfig {
         config.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
         config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JacksonJsonDeserializer.class);
+        // Records of aborted outbox relay transactions must never reach the listener
+        config.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
 
         JacksonJsonDeserializer<UserEvent> valueDeserializer = new JacksonJsonDeserializer<>(UserEvent.class);
         valueDeserializer.setUseTypeHeaders(false);
@@ -3,6 +3,7 @@ package org.strelnikova.notification.service.consumer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import org.strelnikova.notification.service.dto.UserEvent;
@@ -11,17 +12,36 @@ import org.strelnikova.notification.service.repository.EmailOutboxRepository;
 import org.strelnikova.notification.service.service.NotificationMessageBuilder;
 import org.strelnikova.notification.service.service.NotificationMessageBuilder.EmailData;
 
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
 @Component
 @Slf4j
 @RequiredArgsConstructor
 public class UserEventKafkaListener {
 
+    /** Header set by the user-service outbox relay, the same on every redelivery of an event. */
+    static final String HEADER_EVENT_ID = "outbox-event-id";
+
     private final NotificationMessageBuilder messageBuilder;
     private final EmailOutboxRepository outboxRepository;
 
+    /**
+     * The relay may publish an event again when its database update fails after the Kafka commit, and
+     * the group may redeliver after a crash before the offset commit. An event id that already has an
+     * outbox record is skipped; the unique {@code event_id} fails a concurrent duplicate, whose retry
+     * is then skipped as well.
+     */
     @KafkaListener(topics = "${app.kafka.topic.user-events}", groupId = "${spring.kafka.consumer.group-id}")
     @Transactional
-    public void listen(UserEvent event) {
+    public void listen(UserEvent event, @Header(name = HEADER_EVENT_ID, required = false) byte[] eventIdHeader) {
+        UUID eventId = eventIdHeader == null
+                ? null
+                : UUID.fromString(new String(eventIdHeader, StandardCharsets.UTF_8));
+        if (eventId != null && outboxRepository.existsByEventId(eventId)) {
+            log.info("Skipping already processed user event {}", eventId);
+            return;
+        }
         log.info("Received user event: {}", event);
 
         // Создаём данные письма
@@ -29,6 +49,7 @@ public class UserEventKafkaListener {
 
         // Сохраняем в outbox
         EmailOutbox outbox = new EmailOutbox();
+        outbox.setEventId(eventId);
         outbox.setToEmail(emailData.to());
         outbox.setSubject(emailData.subject());
         outbox.setBody(emailData.body());
@@ -7,6 +7,7 @@ import org.hibernate.annotations.UpdateTimestamp;
 
 import jakarta.persistence.*;
 import java.time.Instant;
+import java.util.UUID;
 
 @Entity
 @Table(name = "email_outbox")
@@ -16,6 +17,10 @@ public class EmailOutbox {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    /** Id of the user-service outbox event the email was created from; redeliveries carry the same id. */
+    @Column(name = "event_id", unique = true)
+    private UUID eventId;
+
     private String toEmail;
     private String subject;
     @Column(columnDefinition = "TEXT")
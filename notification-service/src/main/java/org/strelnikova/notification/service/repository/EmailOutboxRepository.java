@@ -9,9 +9,12 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.UUID;
 
 public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long> {
 
+    boolean existsByEventId(UUID eventId);
+
     @Query(value = """
         SELECT * FROM email_outbox
         WHERE status = 'PENDING' AND attempts < 5
@@ -15,10 +15,15 @@ import org.strelnikova.notification.service.entity.EmailStatus;
 import org.strelnikova.notification.service.repository.EmailOutboxRepository;
 import org.strelnikova.notification.service.service.NotificationMessageBuilder;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -56,7 +61,8 @@ class UserEventKafkaListenerTest {
 
         when(messageBuilder.createEmailData(event)).thenReturn(emailData);
 
-        listener.listen(event);
+        UUID eventId = UUID.randomUUID();
+        listener.listen(event, eventId.toString().getBytes(StandardCharsets.UTF_8));
 
         verify(messageBuilder).createEmailData(event);
         verify(outboxRepository).save(outboxCaptor.capture());
@@ -67,5 +73,36 @@ class UserEventKafkaListenerTest {
         assertThat(savedOutbox.getBody()).isEqualTo("Body");
         assertThat(savedOutbox.getStatus()).isEqualTo(EmailStatus.PENDING);
         assertThat(savedOutbox.getAttempts()).isZero();
+        assertThat(savedOutbox.getEventId()).isEqualTo(eventId);
+    }
+
+    @Test
+    @DisplayName("Повторно доставленное событие не создаёт второе письмо")
+    void listen_shouldSkipAlreadyProcessedEvent() {
+        UUID eventId = UUID.randomUUID();
+        when(outboxRepository.existsByEventId(eventId)).thenReturn(true);
+
+        listener.listen(event(), eventId.toString().getBytes(StandardCharsets.UTF_8));
+
+        verifyNoInteractions(messageBuilder);
+        verify(outboxRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Событие без идентификатора outbox сохраняется без проверки на дубликат")
+    void listen_shouldSaveEventWithoutIdHeader() {
+        UserEvent event = event();
+        when(messageBuilder.createEmailData(event)).thenReturn(
+                new NotificationMessageBuilder.EmailData("john@example.com", "Subject", "Body"));
+
+        listener.listen(event, null);
+
+        verify(outboxRepository, never()).existsByEventId(any());
+        verify(outboxRepository).save(outboxCaptor.capture());
+        assertThat(outboxCaptor.getValue().getEventId()).isNull();
+    }
+
+    private static UserEvent event() {
+        return new UserEvent("john_doe", "john@example.com", UserEventType.CREATED, Instant.now());
     }
 }
\ No newline at end of file
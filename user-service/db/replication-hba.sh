@@ -0,0 +1,4 @@
+#!/bin/bash
+# Lets postgres-user-replica take a base backup and stream WAL as the application user
+set -e
+echo "host replication all all scram-sha-256" >> "$PGDATA/pg_hba.conf"
@@ -0,0 +1,43 @@
+package org.strelnikova.user.service.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String USERS_CACHE = "users";
+
+    @Value("${app.cache.users.maximum-size:10000}")
+    private long usersMaximumSize;
+
+    @Value("${app.cache.users.expire-after-write-seconds:300}")
+    private long usersExpireAfterWriteSeconds;
+
+    /**
+     * Bounded Caffeine (W-TinyLFU) cache of {@code UserResponseDTO} by id. The transaction-aware
+     * proxy defers puts and evictions to after commit, so a rolled back update never evicts and a
+     * reader never re-caches a row the running transaction is about to change. The TTL bounds
+     * staleness left by a reader that loaded the old row just before the commit.
+     */
+    @Bean
+    public CacheManager cacheManager() {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager(USERS_CACHE);
+        cacheManager.setCaffeine(Caffeine.newBuilder()
+                .maximumSize(usersMaximumSize)
+                .expireAfterWrite(Duration.ofSeconds(usersExpireAfterWriteSeconds))
+                // Hit, miss and eviction counts are bound to Micrometer as cache.* meters
+                .recordStats());
+        cacheManager.setAllowNullValues(false);
+        return new TransactionAwareCacheManagerProxy(cacheManager);
+    }
+}
@@ -0,0 +1,52 @@
+package org.strelnikova.user.service.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.strelnikova.user.service.exception.ServiceOverloadedException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the requests handled at once. With virtual threads Tomcat no longer bounds concurrency, so
+ * without a cap a slow database turns every incoming request into a thread parked on the Hikari
+ * pool until its connection timeout. Requests over the cap wait briefly for a permit and are then
+ * rejected with 503.
+ */
+public class ConcurrencyLimitInterceptor implements HandlerInterceptor {
+
+    private final Semaphore permits;
+    private final int maxInFlight;
+    private final long acquireTimeoutMs;
+
+    public ConcurrencyLimitInterceptor(int maxInFlight, long acquireTimeoutMs) {
+        this.permits = new Semaphore(maxInFlight, true);
+        this.maxInFlight = maxInFlight;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws InterruptedException {
+        if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+            throw new ServiceOverloadedException("Too many concurrent requests, retry later");
+        }
+        return true;
+    }
+
+    // Only called when preHandle returned true, i.e. a permit is held
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        permits.release();
+    }
+
+    public int inFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    public int maxInFlight() {
+        return maxInFlight;
+    }
+}
@@ -1,40 +1,94 @@
 package org.strelnikova.user.service.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.MicrometerProducerListener;
+import org.springframework.kafka.core.DefaultTransactionIdSuffixStrategy;
 import org.springframework.kafka.core.ProducerFactory;
-import org.springframework.kafka.support.serializer.JacksonJsonSerializer;
-import org.strelnikova.user.service.model.UserEvent;
 
 import java.util.HashMap;
 import java.util.Map;
 
 @Configuration
+@RequiredArgsConstructor
 public class KafkaProducerConfig {
 
+    private final MeterRegistry meterRegistry;
+
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    @Value("${app.kafka.producer.linger-ms:10}")
+    private int lingerMs;
+
+    @Value("${app.kafka.producer.batch-size:65536}")
+    private int batchSize;
+
+    @Value("${app.kafka.producer.compression-type:lz4}")
+    private String compressionType;
+
+    @Value("${app.kafka.producer.transactional:false}")
+    private boolean transactional;
+
+    @Value("${app.kafka.producer.transaction-id-prefix:${spring.application.name}-outbox}")
+    private String transactionIdPrefix;
+
+    @Value("${app.outbox.sharding.enabled:false}")
+    private boolean shardingEnabled;
+
+    /**
+     * Values are written by the outbox already serialized, so the producer only forwards bytes.
+     * In transactional mode every outbox shard gets its own stable {@code transactional.id}
+     * (see {@link org.strelnikova.user.service.service.KafkaUserService}); one id per prefix is
+     * enough because the relay never publishes two batches of a shard at the same time. That only
+     * holds while shard leases keep the replicas apart, so transactional mode requires sharding:
+     * otherwise every replica would open transactions of every shard and fence the others.
+     */
     @Bean
-    public ProducerFactory<String, UserEvent> producerFactory() {
+    public ProducerFactory<String, byte[]> producerFactory() {
+        if (transactional && !shardingEnabled) {
+            throw new IllegalStateException("app.kafka.producer.transactional=true requires "
+                    + "app.outbox.sharding.enabled=true: without shard leases replicas share transactional ids "
+                    + "and fence each other");
+        }
         Map<String, Object> config = new HashMap<>();
         config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JacksonJsonSerializer.class);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
 
-        JacksonJsonSerializer<UserEvent> valueSerializer = new JacksonJsonSerializer<>();
-        valueSerializer.setAddTypeInfo(false);
+        // The relay pipelines whole batches, so records have a chance to share producer batches
+        config.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        config.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+        // Idempotence keeps per-partition order with several requests in flight
+        config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        config.put(ProducerConfig.ACKS_CONFIG, "all");
+        config.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5);
 
-        return  new DefaultKafkaProducerFactory<>(config, new StringSerializer(), valueSerializer);
+        DefaultKafkaProducerFactory<String, byte[]> factory =
+                new DefaultKafkaProducerFactory<>(config, new StringSerializer(), new ByteArraySerializer());
+        if (transactional) {
+            factory.setTransactionIdPrefix(transactionIdPrefix + "-");
+            factory.setTransactionIdSuffixStrategy(new DefaultTransactionIdSuffixStrategy(1));
+        }
+        // Exposes the producer client metrics (record send rate, batch size, request latency) to Micrometer
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        return factory;
     }
 
     @Bean
-    public KafkaTemplate<String, UserEvent> kafkaTemplate() {
-        return new KafkaTemplate<>(producerFactory());
+    public KafkaTemplate<String, byte[]> kafkaTemplate() {
+        KafkaTemplate<String, byte[]> template = new KafkaTemplate<>(producerFactory());
+        // Single sends outside the relay keep working on a plain idempotent producer
+        template.setAllowNonTransactional(true);
+        return template;
     }
 }
@@ -0,0 +1,87 @@
+package org.strelnikova.user.service.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+
+/**
+ * Measures the replay lag of the read replica on a schedule. Reads fall back to the primary while
+ * the lag exceeds the limit, the replica is not streaming WAL or cannot be queried, and return once
+ * it has caught up.
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+
+    // NULL while the WAL receiver is not streaming: replay then trivially equals receive, however stale.
+    // An idle primary produces no transactions to replay, so a streaming replica that has replayed all
+    // it received is current. The status column needs pg_read_all_stats (or superuser) on the replica.
+    private static final String LAG_QUERY = """
+            SELECT CASE
+                WHEN NOT EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE status = 'streaming') THEN NULL
+                WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0)
+            END
+            """;
+
+    private final JdbcTemplate replicaJdbcTemplate;
+    private final long maxLagMs;
+
+    private volatile boolean replicaUsable;
+    private volatile double lagMs = -1;
+
+    public ReplicaLagMonitor(DataSource replicaDataSource, long maxLagMs, MeterRegistry meterRegistry) {
+        this(new JdbcTemplate(replicaDataSource), maxLagMs, meterRegistry);
+        this.replicaJdbcTemplate.setQueryTimeout(2);
+    }
+
+    ReplicaLagMonitor(JdbcTemplate replicaJdbcTemplate, long maxLagMs, MeterRegistry meterRegistry) {
+        this.replicaJdbcTemplate = replicaJdbcTemplate;
+        this.maxLagMs = maxLagMs;
+
+        Gauge.builder("datasource.replica.lag", this, monitor -> monitor.lagMs)
+                .description("Replay lag of the read replica, -1 when it is not streaming or cannot be queried")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("datasource.replica.usable", this, monitor -> monitor.replicaUsable ? 1 : 0)
+                .description("1 while read-only transactions go to the replica, 0 while they fall back to the primary")
+                .register(meterRegistry);
+    }
+
+    public boolean isReplicaUsable() {
+        return replicaUsable;
+    }
+
+    @Scheduled(fixedDelayString = "${app.datasource.replica.lag-check-interval-ms:1000}")
+    public void checkLag() {
+        boolean usable;
+        try {
+            Double lag = replicaJdbcTemplate.queryForObject(LAG_QUERY, Double.class);
+            if (lag == null) {
+                lagMs = -1;
+                usable = false;
+                if (replicaUsable) {
+                    log.warn("Read replica is not streaming from the primary");
+                }
+            } else {
+                lagMs = lag;
+                usable = lagMs <= maxLagMs;
+            }
+        } catch (Exception e) {
+            lagMs = -1;
+            usable = false;
+            if (replicaUsable) {
+                log.warn("Cannot query read replica: {}", e.getMessage());
+            }
+        }
+        if (usable != replicaUsable) {
+            log.warn(usable
+                    ? "Read replica caught up (lag {} ms), routing read-only transactions to it"
+                    : "Read replica unavailable or lagging (lag {} ms), routing reads to the primary", lagMs);
+        }
+        replicaUsable = usable;
+    }
+}
@@ -0,0 +1,47 @@
+package org.strelnikova.user.service.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Extras of the virtual-thread mode ({@code spring.threads.virtual.enabled=true}). Boot itself moves
+ * Tomcat request handling and the {@code @Scheduled} scheduler to virtual threads; the Kafka
+ * listener executor is switched in {@link KafkaConsumerConfig}. What is left here is the bound that
+ * the platform thread pool used to provide.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig implements WebMvcConfigurer {
+
+    private final ConcurrencyLimitInterceptor concurrencyLimitInterceptor;
+
+    /**
+     * The limit defaults to a multiple of the primary connection pool: a request holds at most one
+     * connection, and the multiple leaves room for requests served from the cache.
+     */
+    public VirtualThreadConfig(@Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+                               @Value("${app.concurrency.requests-per-connection:4}") int requestsPerConnection,
+                               @Value("${app.concurrency.acquire-timeout-ms:500}") long acquireTimeoutMs,
+                               MeterRegistry meterRegistry) {
+        this.concurrencyLimitInterceptor =
+                new ConcurrencyLimitInterceptor(Math.max(poolSize * requestsPerConnection, 1), acquireTimeoutMs);
+
+        Gauge.builder("users.requests.in.flight.limit", concurrencyLimitInterceptor,
+                        ConcurrencyLimitInterceptor::maxInFlight)
+                .description("Maximum number of /api requests handled at once")
+                .register(meterRegistry);
+        Gauge.builder("users.requests.in.flight", concurrencyLimitInterceptor, ConcurrencyLimitInterceptor::inFlight)
+                .description("/api requests currently holding a concurrency permit")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(concurrencyLimitInterceptor).addPathPatterns("/api/**");
+    }
+}
@@ -0,0 +1,82 @@
+package org.strelnikova.user.service.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+import org.strelnikova.user.service.config.CacheConfig;
+import org.strelnikova.user.service.model.UserEvent;
+import org.strelnikova.user.service.model.UserEventType;
+import org.strelnikova.user.service.service.UserEmailFilter;
+import tools.jackson.databind.ObjectMapper;
+
+import java.util.UUID;
+
+/**
+ * Applies user changes made on any replica to this instance's in-process state: evicts the cached
+ * user and adds created or changed emails to the {@link UserEmailFilter}, which otherwise would only
+ * see this instance's own writes until its next rebuild. Every user event is keyed by the user id,
+ * so the outbox relay's own topic doubles as the invalidation channel; each instance consumes it in
+ * a group of its own so that all replicas see every event. The group id is stable per host, and the
+ * group never commits offsets, so the broker removes it once its member is gone.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("${app.cache.users.invalidation.enabled:true} or ${app.users.email-filter.enabled:true}")
+public class UserCacheInvalidationListener {
+
+    private final CacheManager cacheManager;
+    private final UserEmailFilter userEmailFilter;
+    private final ObjectMapper objectMapper;
+    private final boolean evictCache;
+
+    public UserCacheInvalidationListener(CacheManager cacheManager, UserEmailFilter userEmailFilter,
+                                         ObjectMapper objectMapper,
+                                         @Value("${app.cache.users.invalidation.enabled:true}") boolean evictCache) {
+        this.cacheManager = cacheManager;
+        this.userEmailFilter = userEmailFilter;
+        this.objectMapper = objectMapper;
+        this.evictCache = evictCache;
+    }
+
+    // Falls back to a random id rather than a shared one, which would split events between replicas
+    @KafkaListener(topics = "${app.kafka.topic.user-events}",
+            groupId = "${spring.application.name}-cache-${HOSTNAME:${random.uuid}}",
+            containerFactory = "cacheInvalidationListenerContainerFactory")
+    public void onUserEvent(ConsumerRecord<String, byte[]> record) {
+        UUID userId;
+        try {
+            userId = UUID.fromString(record.key());
+        } catch (RuntimeException e) {
+            log.warn("Skipping user event with unexpected key {} at offset {}", record.key(), record.offset());
+            return;
+        }
+
+        if (evictCache) {
+            Cache users = cacheManager.getCache(CacheConfig.USERS_CACHE);
+            if (users != null) {
+                users.evict(userId);
+                log.debug("Evicted cached user {}", userId);
+            }
+        }
+        putEmail(userId, record);
+    }
+
+    private void putEmail(UUID userId, ConsumerRecord<String, byte[]> record) {
+        UserEvent event;
+        try {
+            event = objectMapper.readValue(record.value(), UserEvent.class);
+        } catch (RuntimeException e) {
+            log.warn("Cannot read user event of {} at offset {}: {}", userId, record.offset(), e.getMessage());
+            return;
+        }
+        // A deleted email stays in the filter as a false positive until the next rebuild
+        if (event.status() != UserEventType.DELETED) {
+            userEmailFilter.put(event.email());
+        }
+    }
+}
@@ -4,19 +4,33 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.hateoas.CollectionModel;
 import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.Link;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.strelnikova.user.service.controller.dto.UserBatchItemResult;
+import org.strelnikova.user.service.controller.dto.UserPage;
 import org.strelnikova.user.service.controller.dto.UserRequestDTO;
 import org.strelnikova.user.service.controller.dto.UserResponseDTO;
+import org.strelnikova.user.service.controller.dto.UserSearchFilter;
+import org.strelnikova.user.service.service.UserExportFormat;
 import org.strelnikova.user.service.service.UserService;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Locale;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -31,39 +45,121 @@ public class UserController {
 
     private final UserService userService;
 
-    @Operation(summary = "Get all users", description = "Returns a list of all users")
-    @ApiResponse(responseCode = "200", description = "Successfully retrieved list")
+    @Operation(summary = "Get users", description = "Returns one page of users ordered by creation time; "
+            + "follow the next link to get the following page")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved page"),
+            @ApiResponse(responseCode = "304", description = "Page unchanged since the ETag in If-None-Match"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor or page size")
+    })
     @GetMapping
-    public ResponseEntity<CollectionModel<EntityModel<UserResponseDTO>>> getAllUsers() {
-       log.info("fetching all users");
-        final List<UserResponseDTO> allUsers = userService.getAllUsers();
-        List<EntityModel<UserResponseDTO>> users = allUsers.stream()
-                .map(user -> EntityModel.of(user,
-                        linkTo(methodOn(UserController.class).getUser(user.id())).withSelfRel(),
-                        linkTo(methodOn(UserController.class).getAllUsers()).withRel("users")))
+    public ResponseEntity<CollectionModel<EntityModel<UserResponseDTO>>> getAllUsers(
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "size", required = false) Integer size,
+            WebRequest request) {
+        log.info("Fetching users page, cursor: {}, size: {}", cursor, size);
+        UserPage page = userService.getUsers(cursor, size);
+        // Answered before any link is built or anything is serialized
+        String eTag = pageETag(page);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        UserLinks links = UserLinks.resolve();
+        List<EntityModel<UserResponseDTO>> users = page.users().stream()
+                .map(links::toModel)
                 .collect(Collectors.toList());
 
         CollectionModel<EntityModel<UserResponseDTO>> collection = CollectionModel.of(users,
-                linkTo(methodOn(UserController.class).getAllUsers()).withSelfRel());
+                linkTo(methodOn(UserController.class).getAllUsers(cursor, size, null)).withSelfRel());
+        if (page.nextCursor() != null) {
+            collection.add(linkTo(methodOn(UserController.class).getAllUsers(page.nextCursor(), size, null))
+                    .withRel(IanaLinkRelations.NEXT));
+        }
+
+        return ResponseEntity.ok().eTag(eTag).body(collection);
+    }
+
+    @Operation(summary = "Search users", description = "Returns one page of users matching every given filter, "
+            + "ordered by creation time; follow the next link to get the following page")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved page"),
+            @ApiResponse(responseCode = "304", description = "Page unchanged since the ETag in If-None-Match"),
+            @ApiResponse(responseCode = "400", description = "Invalid filter, cursor or page size")
+    })
+    @GetMapping("/search")
+    public ResponseEntity<CollectionModel<EntityModel<UserResponseDTO>>> searchUsers(
+            @RequestParam(name = "email", required = false) String emailPrefix,
+            @RequestParam(name = "name", required = false) String name,
+            @RequestParam(name = "minAge", required = false) Integer minAge,
+            @RequestParam(name = "maxAge", required = false) Integer maxAge,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "size", required = false) Integer size,
+            WebRequest request) {
+        log.info("Searching users, email: {}, name: {}, age: {}-{}, cursor: {}, size: {}",
+                emailPrefix, name, minAge, maxAge, cursor, size);
+        UserPage page = userService.searchUsers(new UserSearchFilter(emailPrefix, name, minAge, maxAge), cursor, size);
+        String eTag = pageETag(page);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        UserLinks links = UserLinks.resolve();
+        List<EntityModel<UserResponseDTO>> users = page.users().stream()
+                .map(links::toModel)
+                .collect(Collectors.toList());
+
+        CollectionModel<EntityModel<UserResponseDTO>> collection = CollectionModel.of(users,
+                linkTo(methodOn(UserController.class)
+                        .searchUsers(emailPrefix, name, minAge, maxAge, cursor, size, null)).withSelfRel());
+        if (page.nextCursor() != null) {
+            collection.add(linkTo(methodOn(UserController.class)
+                    .searchUsers(emailPrefix, name, minAge, maxAge, page.nextCursor(), size, null))
+                    .withRel(IanaLinkRelations.NEXT));
+        }
+
+        return ResponseEntity.ok().eTag(eTag).body(collection);
+    }
+
+    @Operation(summary = "Export all users",
+            description = "Streams every user as NDJSON (default) or CSV without loading the table into memory")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Export streamed"),
+            @ApiResponse(responseCode = "400", description = "Unsupported format")
+    })
+    @GetMapping("/export")
+    public void exportUsers(@RequestParam(name = "format", defaultValue = "ndjson") String format,
+                            HttpServletResponse response) throws IOException {
+        UserExportFormat exportFormat = UserExportFormat.of(format);
+        log.info("Exporting users as {}", exportFormat);
 
-        return ResponseEntity.ok(collection);
+        response.setContentType(exportFormat.getContentType());
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename("users." + exportFormat.name().toLowerCase(Locale.ROOT))
+                .build()
+                .toString());
+        userService.exportUsers(exportFormat, response.getOutputStream());
     }
 
     @Operation(summary = "Get user by ID")
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "User found"),
+            @ApiResponse(responseCode = "304", description = "User unchanged since the ETag in If-None-Match"),
             @ApiResponse(responseCode = "404", description = "User not found")
     })
     @GetMapping("{id}")
-    public ResponseEntity<EntityModel<UserResponseDTO>> getUser(@PathVariable("id") UUID id) {
+    public ResponseEntity<EntityModel<UserResponseDTO>> getUser(@PathVariable("id") UUID id, WebRequest request) {
         log.info("Fetching user with id: {}", id);
 
+        // A revalidation costs one version lookup by primary key instead of loading the user
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                && request.checkNotModified(userETag(userService.getUserVersion(id)))) {
+            return null;
+        }
+
         UserResponseDTO user = userService.getUserById(id);
-        EntityModel<UserResponseDTO> userModel = EntityModel.of(user,
-                linkTo(methodOn(UserController.class).getUser(id)).withSelfRel(),
-                linkTo(methodOn(UserController.class).getAllUsers()).withRel("users"));
+        EntityModel<UserResponseDTO> userModel = UserLinks.resolve().toModel(user);
 
-        return ResponseEntity.ok(userModel);
+        return ResponseEntity.ok().eTag(userETag(user.version())).body(userModel);
     }
 
     @Operation(summary = "Create a new user")
@@ -76,36 +172,46 @@ public class UserController {
         log.info("Creating a new user: {}", requestDTO);
 
         UserResponseDTO responseDTO = userService.createUser(requestDTO);
-        EntityModel<UserResponseDTO> userModel = EntityModel.of(responseDTO,
-                linkTo(methodOn(UserController.class).getUser(responseDTO.id())).withSelfRel(),
-                linkTo(methodOn(UserController.class).getAllUsers()).withRel("users"));
+        EntityModel<UserResponseDTO> userModel = UserLinks.resolve().toModel(responseDTO);
 
         URI location = ServletUriComponentsBuilder.fromCurrentRequest()
                 .path("/{id}")
                 .buildAndExpand(responseDTO.id())
                 .toUri();
 
-        return ResponseEntity.created(location).body(userModel);
+        return ResponseEntity.created(location).eTag(userETag(responseDTO.version())).body(userModel);
+    }
+
+    @Operation(summary = "Create users in bulk",
+            description = "Creates every valid entry in one transaction; the result lists each entry in request order")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Batch processed, see per-item results"),
+            @ApiResponse(responseCode = "400", description = "Batch exceeds the maximum size")
+    })
+    @PostMapping("/batch")
+    public ResponseEntity<List<UserBatchItemResult>> createUsers(@RequestBody List<UserRequestDTO> requestDTOs) {
+        log.info("Creating batch of {} users", requestDTOs.size());
+        return ResponseEntity.ok(userService.createUsers(requestDTOs));
     }
 
     @Operation(summary = "Update an existing user")
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "User updated"),
             @ApiResponse(responseCode = "404", description = "User not found"),
-            @ApiResponse(responseCode = "400", description = "Invalid input")
+            @ApiResponse(responseCode = "400", description = "Invalid input or If-Match header"),
+            @ApiResponse(responseCode = "409", description = "User changed since the ETag in If-Match")
     })
     @PutMapping("/{id}")
     public ResponseEntity<EntityModel<UserResponseDTO>> updateUser(
             @PathVariable("id") UUID id,
-            @RequestBody UserRequestDTO requestDTO) {
-        log.info("Updating user with id {}", id);
+            @RequestBody UserRequestDTO requestDTO,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        log.info("Updating user with id {}, If-Match: {}", id, ifMatch);
 
-        UserResponseDTO updatedUser = userService.updateUser(id, requestDTO);
-        EntityModel<UserResponseDTO> userModel = EntityModel.of(updatedUser,
-                linkTo(methodOn(UserController.class).getUser(id)).withSelfRel(),
-                linkTo(methodOn(UserController.class).getAllUsers()).withRel("users"));
+        UserResponseDTO updatedUser = userService.updateUser(id, requestDTO, expectedVersion(ifMatch));
+        EntityModel<UserResponseDTO> userModel = UserLinks.resolve().toModel(updatedUser);
 
-        return ResponseEntity.ok(userModel);
+        return ResponseEntity.ok().eTag(userETag(updatedUser.version())).body(userModel);
     }
 
     @Operation(summary = "Delete a user")
@@ -119,4 +225,58 @@ public class UserController {
         userService.deleteUser(id);
         return ResponseEntity.noContent().build();
     }
+
+    /**
+     * Links shared by every user of a response, resolved once per request. The {@code users} link
+     * keeps the {@code methodOn} form, whose unset optional parameters render as the template
+     * {@code /api/users{?cursor,size}}; self links append the id to the plain collection path, the
+     * same href {@code linkTo(methodOn(...).getUser(id, null))} produces.
+     */
+    private record UserLinks(String usersPath, Link users) {
+
+        static UserLinks resolve() {
+            return new UserLinks(linkTo(UserController.class).toUri().toString(),
+                    linkTo(methodOn(UserController.class).getAllUsers(null, null, null)).withRel("users"));
+        }
+
+        EntityModel<UserResponseDTO> toModel(UserResponseDTO user) {
+            return EntityModel.of(user, Link.of(usersPath + "/" + user.id()).withSelfRel(), users);
+        }
+    }
+
+    private static String userETag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * Version from an {@code If-Match} header carrying one of our strong ETags; {@code null} when the
+     * header is absent or {@code *}, i.e. the client does not ask for a conditional update.
+     */
+    private static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String eTag = ifMatch.trim();
+        if (eTag.length() < 3 || !eTag.startsWith("\"") || !eTag.endsWith("\"")) {
+            throw new IllegalArgumentException("If-Match must be a strong ETag of the user: " + ifMatch);
+        }
+        try {
+            return Long.parseLong(eTag.substring(1, eTag.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("If-Match must be a strong ETag of the user: " + ifMatch);
+        }
+    }
+
+    /**
+     * Digest of the ids and versions on the page plus the next cursor: changes whenever a user on
+     * the page is updated, deleted or a new one sorts into it.
+     */
+    private static String pageETag(UserPage page) {
+        StringBuilder key = new StringBuilder();
+        for (UserResponseDTO user : page.users()) {
+            key.append(user.id()).append(':').append(user.version()).append(',');
+        }
+        key.append(page.nextCursor());
+        return "\"" + DigestUtils.md5DigestAsHex(key.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
 }
\ No newline at end of file
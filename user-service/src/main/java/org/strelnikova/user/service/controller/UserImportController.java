@@ -0,0 +1,67 @@
+package org.strelnikova.user.service.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.strelnikova.user.service.controller.dto.UserImportStatus;
+import org.strelnikova.user.service.service.UserImportService;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.UUID;
+
+@Tag(name = "User import", description = "Bulk CSV import of users")
+@Slf4j
+@RestController
+@RequestMapping("/api/users/import")
+@RequiredArgsConstructor
+public class UserImportController {
+
+    private final UserImportService userImportService;
+
+    @Operation(summary = "Import users from the request body",
+            description = "Streams a CSV with name, email and age columns into the database and returns "
+                    + "once the import has finished; progress can be polled meanwhile")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Import finished, see state and failures")
+    })
+    @PostMapping(consumes = "text/csv")
+    public ResponseEntity<UserImportStatus> importBody(HttpServletRequest request) throws IOException {
+        log.info("Importing users from request body of {} bytes", request.getContentLengthLong());
+        return ResponseEntity.ok(userImportService.importCsv(request.getInputStream()));
+    }
+
+    @Operation(summary = "Import users from a server-side file",
+            description = "Starts importing a CSV file from the configured import directory in the background")
+    @ApiResponses({
+            @ApiResponse(responseCode = "202", description = "Import started"),
+            @ApiResponse(responseCode = "400", description = "File import disabled or no such file")
+    })
+    @PostMapping(params = "file")
+    public ResponseEntity<UserImportStatus> importFile(@RequestParam("file") String fileName) {
+        log.info("Importing users from file {}", fileName);
+        UserImportStatus status = userImportService.startFileImport(fileName);
+        URI location = ServletUriComponentsBuilder.fromCurrentRequestUri()
+                .path("/{id}")
+                .buildAndExpand(status.id())
+                .toUri();
+        return ResponseEntity.accepted().location(location).body(status);
+    }
+
+    @Operation(summary = "Get import progress")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Import found"),
+            @ApiResponse(responseCode = "404", description = "Unknown or expired import")
+    })
+    @GetMapping("/{id}")
+    public ResponseEntity<UserImportStatus> getImport(@PathVariable("id") UUID id) {
+        return ResponseEntity.of(userImportService.getStatus(id));
+    }
+}
@@ -1,20 +1,22 @@
 package org.strelnikova.user.service.controller;
 
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 import org.mapstruct.MappingConstants;
 import org.strelnikova.user.service.controller.dto.UserRequestDTO;
 import org.strelnikova.user.service.controller.dto.UserResponseDTO;
 import org.strelnikova.user.service.model.User;
-
-import java.util.List;
+import org.strelnikova.user.service.model.UserRow;
 
 @Mapper(componentModel = MappingConstants.ComponentModel.SPRING)
 public interface UserMapper {
 
     UserResponseDTO userToResponseDTO(User user);
 
-    User requestDTOToUser(UserRequestDTO requestDTO);
+    UserResponseDTO rowToResponseDTO(UserRow row);
 
-    List<UserResponseDTO> usersToResponseDTOs(List<User> users);
+    // The version is owned by optimistic locking, never taken from a request
+    @Mapping(target = "version", ignore = true)
+    User requestDTOToUser(UserRequestDTO requestDTO);
 
 }
@@ -0,0 +1,16 @@
+package org.strelnikova.user.service.controller.dto;
+
+/**
+ * Outcome of one entry of a batch create, at the same {@code index} as in the request; exactly one
+ * of {@code user} and {@code error} is set.
+ */
+public record UserBatchItemResult(int index, UserResponseDTO user, String error) {
+
+    public static UserBatchItemResult created(int index, UserResponseDTO user) {
+        return new UserBatchItemResult(index, user, null);
+    }
+
+    public static UserBatchItemResult rejected(int index, String error) {
+        return new UserBatchItemResult(index, null, error);
+    }
+}
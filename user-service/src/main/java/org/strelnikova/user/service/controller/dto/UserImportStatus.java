@@ -0,0 +1,22 @@
+package org.strelnikova.user.service.controller.dto;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Progress of a CSV import; {@code failures} holds only the first rejected lines, {@code rejected}
+ * counts all of them.
+ */
+public record UserImportStatus(UUID id, String source, State state, long linesRead, long created, long rejected,
+                               Instant startedAt, Instant finishedAt, String error, List<Failure> failures) {
+
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    public record Failure(long line, String error) {
+    }
+}
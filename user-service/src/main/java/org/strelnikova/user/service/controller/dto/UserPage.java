@@ -0,0 +1,9 @@
+package org.strelnikova.user.service.controller.dto;
+
+import java.util.List;
+
+/**
+ * One keyset page of users; {@code nextCursor} is {@code null} on the last page.
+ */
+public record UserPage(List<UserResponseDTO> users, String nextCursor) {
+}
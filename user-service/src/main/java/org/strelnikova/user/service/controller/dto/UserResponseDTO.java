@@ -1,7 +1,13 @@
 package org.strelnikova.user.service.controller.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.time.OffsetDateTime;
 import java.util.UUID;
 
-public record UserResponseDTO (UUID id, String name, String email, Integer age, OffsetDateTime createdAt){
+/**
+ * {@code version} is not part of the body; it is sent as the ETag header.
+ */
+public record UserResponseDTO (UUID id, String name, String email, Integer age, OffsetDateTime createdAt,
+                               @JsonIgnore Long version){
 }
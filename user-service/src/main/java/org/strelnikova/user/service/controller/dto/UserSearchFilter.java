@@ -0,0 +1,15 @@
+package org.strelnikova.user.service.controller.dto;
+
+/**
+ * Optional filters of {@code GET /api/users/search}; a {@code null} or blank field does not filter.
+ */
+public record UserSearchFilter(String emailPrefix, String name, Integer minAge, Integer maxAge) {
+
+    public UserSearchFilter {
+        emailPrefix = emailPrefix == null || emailPrefix.isBlank() ? null : emailPrefix.strip();
+        name = name == null || name.isBlank() ? null : name.strip();
+        if (minAge != null && maxAge != null && minAge > maxAge) {
+            throw new IllegalArgumentException("minAge must not exceed maxAge: " + minAge + " > " + maxAge);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package org.strelnikova.user.service.exception;
+
+public class ServiceOverloadedException extends RuntimeException {
+
+    public ServiceOverloadedException(String message) {
+        super(message);
+    }
+}
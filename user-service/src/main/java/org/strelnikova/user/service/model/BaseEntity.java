@@ -2,6 +2,7 @@ package org.strelnikova.user.service.model;
 
 import jakarta.persistence.*;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UuidGenerator;
 
 import java.time.OffsetDateTime;
 import java.util.Objects;
@@ -11,8 +12,12 @@ import java.util.UUID;
 @MappedSuperclass
 public abstract class BaseEntity {
 
+    /**
+     * Time-ordered UUIDv7, so new rows append to the right edge of the primary key index
+     * instead of landing on a random page as v4 ids do.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @UuidGenerator(style = UuidGenerator.Style.VERSION_7)
     private UUID id;
 
     @Column(name = "created_at", updatable = false)
@@ -3,6 +3,7 @@ package org.strelnikova.user.service.model;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -31,4 +32,12 @@ public class User extends BaseEntity {
     @Column(name = "age")
     private Integer age;
 
+    /**
+     * Row version, bumped on every update (by {@code UserRepository.updateReturning}, which can also
+     * make the update conditional on it); also the strong ETag of the user resource.
+     */
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
 }
\ No newline at end of file
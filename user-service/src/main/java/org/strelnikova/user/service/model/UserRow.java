@@ -0,0 +1,22 @@
+package org.strelnikova.user.service.model;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * A {@code users} row as returned by {@code UPDATE/DELETE ... RETURNING}, without an entity.
+ */
+public interface UserRow {
+
+    UUID getId();
+
+    String getName();
+
+    String getEmail();
+
+    Integer getAge();
+
+    OffsetDateTime getCreatedAt();
+
+    Long getVersion();
+}
@@ -0,0 +1,13 @@
+package org.strelnikova.user.service.model.outbox;
+
+/**
+ * Snapshot of the outbox backlog; {@code oldestPendingAgeSeconds} is {@code null} when nothing is pending.
+ */
+public interface OutboxBacklogStats {
+
+    long getPending();
+
+    Double getOldestPendingAgeSeconds();
+
+    long getFailed();
+}
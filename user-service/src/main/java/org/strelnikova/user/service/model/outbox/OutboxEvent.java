@@ -6,6 +6,7 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.annotations.UuidGenerator;
 
 import java.time.Instant;
 import java.util.UUID;
@@ -17,19 +18,37 @@ import java.util.UUID;
 @NoArgsConstructor
 public class OutboxEvent {
 
+    /**
+     * Number of logical relay shards. Must stay in sync with the rows seeded into
+     * {@code outbox_shard_leases}; changing it re-routes existing aggregates.
+     */
+    public static final int SHARD_COUNT = 64;
+
+    /** UUIDv7, time-ordered like {@code created_at}, so inserts stay on the newest index pages. */
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @UuidGenerator(style = UuidGenerator.Style.VERSION_7)
     private UUID id;
 
     @Column(name = "aggregate_id", nullable = false)
     private UUID aggregateId;
 
+    @Column(name = "shard", nullable = false)
+    private int shard;
+
     @Column(name = "event_type", nullable = false)
     private String eventType;
 
-    @Column(name = "payload", nullable = false)
+    /** JSON of {@link org.strelnikova.user.service.model.outbox.dto.UserEventPayload}, only set on legacy rows. */
+    @Column(name = "payload")
     private String payload;
 
+    @Column(name = "record_key")
+    private String recordKey;
+
+    /** Serialized Kafka record value, forwarded to the producer as is. */
+    @Column(name = "record_value")
+    private byte[] recordValue;
+
     @Enumerated(EnumType.STRING)
     @Column(name = "status", nullable = false)
     private OutboxStatus status = OutboxStatus.PENDING;
@@ -37,6 +56,10 @@ public class OutboxEvent {
     @Column(name = "retry_count", nullable = false)
     private int retryCount = 0;
 
+    /** Filled by the database default on insert so that it uses the same clock as the relay query. */
+    @Column(name = "next_attempt_at", insertable = false)
+    private Instant nextAttemptAt;
+
     @CreationTimestamp
     @Column(name = "created_at", updatable = false)
     private Instant createdAt;
@@ -49,9 +72,18 @@ public class OutboxEvent {
     @Column(name = "version")
     private int version;
 
-    public OutboxEvent(UUID aggregateId, String eventType, String payload) {
+    public OutboxEvent(UUID aggregateId, String eventType, String recordKey, byte[] recordValue) {
         this.aggregateId = aggregateId;
+        this.shard = shardOf(aggregateId);
         this.eventType = eventType;
-        this.payload = payload;
+        this.recordKey = recordKey;
+        this.recordValue = recordValue;
+    }
+
+    /**
+     * Uses the low bits, which are random in both UUIDv4 and UUIDv7; the high bits of a v7 id are its timestamp.
+     */
+    public static int shardOf(UUID aggregateId) {
+        return (int) (aggregateId.getLeastSignificantBits() & 0xFFFF) % SHARD_COUNT;
     }
 }
\ No newline at end of file
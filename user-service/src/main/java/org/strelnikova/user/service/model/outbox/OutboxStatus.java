@@ -3,5 +3,7 @@ package org.strelnikova.user.service.model.outbox;
 public enum OutboxStatus {
     PENDING,
     SENT,
-    FAILED
+    FAILED,
+    /** Superseded by a later event of the same aggregate that was published in its place. */
+    COMPACTED
 }
\ No newline at end of file
@@ -1,14 +1,126 @@
 package org.strelnikova.user.service.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import org.strelnikova.user.service.model.outbox.OutboxBacklogStats;
 import org.strelnikova.user.service.model.outbox.OutboxEvent;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
 public interface OutboxEventRepository extends JpaRepository<OutboxEvent, UUID> {
 
-    @Query("SELECT e FROM OutboxEvent e WHERE e.status = 'PENDING' ORDER BY e.createdAt ASC")
-    List<OutboxEvent> findPendingEvents();
-}
\ No newline at end of file
+    /**
+     * Due PENDING rows, oldest first. A row is held back while an older event of the same
+     * aggregate is still waiting for its retry, so a retried event is never overtaken.
+     */
+    @Query(value = """
+        SELECT e.* FROM outbox_events e
+        WHERE e.status = 'PENDING'
+          AND e.next_attempt_at <= now()
+          AND NOT EXISTS (
+              SELECT 1 FROM outbox_events p
+              WHERE p.aggregate_id = e.aggregate_id
+                AND p.status = 'PENDING'
+                AND p.created_at < e.created_at
+                AND p.next_attempt_at > now())
+        ORDER BY e.created_at
+        LIMIT :limit
+        FOR UPDATE OF e SKIP LOCKED
+        """, nativeQuery = true)
+    List<OutboxEvent> claimPendingBatch(@Param("limit") int limit);
+
+    @Query(value = """
+        SELECT e.* FROM outbox_events e
+        WHERE e.status = 'PENDING'
+          AND e.next_attempt_at <= now()
+          AND NOT EXISTS (
+              SELECT 1 FROM outbox_events p
+              WHERE p.aggregate_id = e.aggregate_id
+                AND p.status = 'PENDING'
+                AND p.created_at < e.created_at
+                AND p.next_attempt_at > now())
+          AND e.shard IN (
+              SELECT l.shard_id FROM outbox_shard_leases l
+              WHERE l.owner = :owner AND l.lease_until > now())
+        ORDER BY e.created_at
+        LIMIT :limit
+        FOR UPDATE OF e SKIP LOCKED
+        """, nativeQuery = true)
+    List<OutboxEvent> claimPendingBatchForOwner(@Param("owner") String owner, @Param("limit") int limit);
+
+    /**
+     * The status updates take the {@code created_at} values of the rows besides their ids: the table is
+     * partitioned by {@code created_at}, and without them every daily partition would be probed.
+     */
+    @Modifying
+    @Query(value = """
+        UPDATE outbox_events
+        SET status = 'SENT', updated_at = now(), version = version + 1
+        WHERE id IN (:ids) AND created_at IN (:createdAts)
+        """, nativeQuery = true)
+    int markSent(@Param("ids") Collection<UUID> ids, @Param("createdAts") Collection<Instant> createdAts);
+
+    @Modifying
+    @Query(value = """
+        UPDATE outbox_events
+        SET status = 'COMPACTED', updated_at = now(), version = version + 1
+        WHERE id IN (:ids) AND created_at IN (:createdAts)
+        """, nativeQuery = true)
+    int markCompacted(@Param("ids") Collection<UUID> ids, @Param("createdAts") Collection<Instant> createdAts);
+
+    /**
+     * Records a failed attempt and schedules the next one with exponential backoff and equal jitter:
+     * {@code min(maxDelay, baseDelay * 2^retryCount)}, randomly scaled to 50-100% per row.
+     */
+    @Modifying
+    @Query(value = """
+        UPDATE outbox_events
+        SET retry_count = retry_count + 1,
+            status = CASE WHEN retry_count + 1 >= :maxRetries THEN 'FAILED' ELSE 'PENDING' END,
+            next_attempt_at = now() + make_interval(secs =>
+                least(:maxDelaySeconds, :baseDelaySeconds * power(2, retry_count)) * (0.5 + random() / 2)),
+            updated_at = now(),
+            version = version + 1
+        WHERE id IN (:ids) AND created_at IN (:createdAts)
+        """, nativeQuery = true)
+    int markFailedAttempt(@Param("ids") Collection<UUID> ids,
+                          @Param("createdAts") Collection<Instant> createdAts,
+                          @Param("maxRetries") int maxRetries,
+                          @Param("baseDelaySeconds") int baseDelaySeconds,
+                          @Param("maxDelaySeconds") int maxDelaySeconds);
+
+    /**
+     * One round trip for the relay backlog gauges; every count is served by a partial index.
+     */
+    @Query(value = """
+        SELECT
+            (SELECT count(*) FROM outbox_events WHERE status = 'PENDING') AS pending,
+            (SELECT extract(epoch FROM now() - min(created_at))::float8 FROM outbox_events WHERE status = 'PENDING')
+                AS "oldestPendingAgeSeconds",
+            (SELECT count(*) FROM outbox_events WHERE status = 'FAILED')
+                + (SELECT count(*) FROM outbox_events_dead_letter) AS failed
+        """, nativeQuery = true)
+    OutboxBacklogStats findBacklogStats();
+
+    @Modifying
+    @Transactional
+    @Query(value = """
+        WITH moved AS (
+            DELETE FROM outbox_events WHERE status = 'FAILED'
+            RETURNING id, aggregate_id, event_type, payload, record_key, record_value, retry_count,
+                      created_at, updated_at)
+        INSERT INTO outbox_events_dead_letter (id, aggregate_id, event_type, payload, record_key, record_value,
+                                               retry_count, created_at, failed_at)
+        SELECT id, aggregate_id, event_type, payload, record_key, record_value, retry_count,
+               created_at, updated_at
+        FROM moved
+        ON CONFLICT (id) DO NOTHING
+        """, nativeQuery = true)
+    int moveFailedToDeadLetter();
+}
@@ -0,0 +1,82 @@
+package org.strelnikova.user.service.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import org.strelnikova.user.service.model.outbox.OutboxShardLease;
+
+import java.util.List;
+
+public interface OutboxShardLeaseRepository extends JpaRepository<OutboxShardLease, Integer> {
+
+    @Modifying
+    @Query(value = """
+        INSERT INTO outbox_relay_instances (instance_id, heartbeat_at) VALUES (:instanceId, now())
+        ON CONFLICT (instance_id) DO UPDATE SET heartbeat_at = now()
+        """, nativeQuery = true)
+    void registerHeartbeat(@Param("instanceId") String instanceId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM outbox_relay_instances WHERE instance_id = :instanceId", nativeQuery = true)
+    void unregister(@Param("instanceId") String instanceId);
+
+    @Modifying
+    @Query(value = """
+        DELETE FROM outbox_relay_instances
+        WHERE heartbeat_at < now() - make_interval(secs => :ttlSeconds)
+        """, nativeQuery = true)
+    int deleteStaleInstances(@Param("ttlSeconds") int ttlSeconds);
+
+    @Query(value = """
+        SELECT count(*) FROM outbox_relay_instances
+        WHERE heartbeat_at >= now() - make_interval(secs => :ttlSeconds)
+        """, nativeQuery = true)
+    long countLiveInstances(@Param("ttlSeconds") int ttlSeconds);
+
+    @Modifying
+    @Query(value = """
+        UPDATE outbox_shard_leases
+        SET lease_until = now() + make_interval(secs => :ttlSeconds)
+        WHERE owner = :owner AND lease_until > now()
+        """, nativeQuery = true)
+    int renewLeases(@Param("owner") String owner, @Param("ttlSeconds") int ttlSeconds);
+
+    @Modifying
+    @Query(value = """
+        UPDATE outbox_shard_leases
+        SET owner = :owner, lease_until = now() + make_interval(secs => :ttlSeconds)
+        WHERE shard_id IN (
+            SELECT shard_id FROM outbox_shard_leases
+            WHERE lease_until IS NULL OR lease_until < now()
+            ORDER BY shard_id
+            LIMIT :count
+            FOR UPDATE SKIP LOCKED)
+        """, nativeQuery = true)
+    int claimFreeShards(@Param("owner") String owner, @Param("count") int count, @Param("ttlSeconds") int ttlSeconds);
+
+    /**
+     * Gives shards back without owner but keeps them blocked for {@code handoffSeconds},
+     * so a batch already claimed from them commits before another instance takes over.
+     */
+    @Modifying
+    @Query(value = """
+        UPDATE outbox_shard_leases
+        SET owner = NULL, lease_until = now() + make_interval(secs => :handoffSeconds)
+        WHERE shard_id IN (
+            SELECT shard_id FROM outbox_shard_leases
+            WHERE owner = :owner AND lease_until > now()
+            ORDER BY shard_id DESC
+            LIMIT :count)
+        """, nativeQuery = true)
+    int releaseShards(@Param("owner") String owner, @Param("count") int count, @Param("handoffSeconds") int handoffSeconds);
+
+    @Query(value = """
+        SELECT shard_id FROM outbox_shard_leases
+        WHERE owner = :owner AND lease_until > now()
+        ORDER BY shard_id
+        """, nativeQuery = true)
+    List<Integer> findOwnedShards(@Param("owner") String owner);
+}
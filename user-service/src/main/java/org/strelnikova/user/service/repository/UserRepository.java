@@ -1,10 +1,116 @@
 package org.strelnikova.user.service.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.strelnikova.user.service.controller.dto.UserResponseDTO;
 import org.strelnikova.user.service.model.User;
+import org.strelnikova.user.service.model.UserRow;
 
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Stream;
 
-public interface UserRepository extends JpaRepository<User, UUID> {
+public interface UserRepository extends JpaRepository<User, UUID>, UserSearchRepository {
     boolean existsByEmail(String email);
+
+    /**
+     * Which of {@code emails} are already taken, in one query over the unique email index.
+     */
+    @Query("SELECT u.email FROM User u WHERE u.email IN :emails")
+    Set<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    /**
+     * Version alone, read by primary key; answers conditional GETs without hydrating the entity.
+     */
+    @Query("SELECT u.version FROM User u WHERE u.id = :id")
+    Optional<Long> findVersionById(@Param("id") UUID id);
+
+    /**
+     * Updates the user in one statement and bumps its version; the unique constraint on email decides
+     * whether the new email is free. With {@code expectedVersion} set the row only matches while it
+     * still has that version, so a stale write returns nothing instead of overwriting. Not
+     * {@code @Modifying}, since the statement returns rows.
+     */
+    @Query(value = """
+        UPDATE users
+        SET name = :name, email = :email, age = :age, version = version + 1
+        WHERE id = :id AND version = COALESCE(CAST(:expectedVersion AS BIGINT), version)
+        RETURNING id, name, email, age, created_at AS "createdAt", version
+        """, nativeQuery = true)
+    Optional<UserRow> updateReturning(@Param("id") UUID id,
+                                      @Param("name") String name,
+                                      @Param("email") String email,
+                                      @Param("age") Integer age,
+                                      @Param("expectedVersion") Long expectedVersion);
+
+    /**
+     * Deletes the user in one statement and returns the row for the outbox event.
+     */
+    @Query(value = """
+        DELETE FROM users
+        WHERE id = :id
+        RETURNING id, name, email, age, created_at AS "createdAt", version
+        """, nativeQuery = true)
+    Optional<UserRow> deleteReturning(@Param("id") UUID id);
+
+    /**
+     * Single user as a DTO; nothing enters the persistence context, so there is no snapshot or
+     * dirty check to pay for.
+     */
+    @Query("""
+        SELECT new org.strelnikova.user.service.controller.dto.UserResponseDTO(u.id, u.name, u.email, u.age, u.createdAt, u.version)
+        FROM User u
+        WHERE u.id = :id
+        """)
+    Optional<UserResponseDTO> findDtoById(@Param("id") UUID id);
+
+    @Query("""
+        SELECT new org.strelnikova.user.service.controller.dto.UserResponseDTO(u.id, u.name, u.email, u.age, u.createdAt, u.version)
+        FROM User u
+        ORDER BY u.createdAt, u.id
+        LIMIT :limit
+        """)
+    List<UserResponseDTO> findFirstPage(@Param("limit") int limit);
+
+    /**
+     * Keyset page after the given position, projected straight into DTOs; the tuple comparison is
+     * rendered as a row value comparison and served by {@code idx_users_created_at_id}.
+     */
+    @Query("""
+        SELECT new org.strelnikova.user.service.controller.dto.UserResponseDTO(u.id, u.name, u.email, u.age, u.createdAt, u.version)
+        FROM User u
+        WHERE (u.createdAt, u.id) > (:createdAt, :id)
+        ORDER BY u.createdAt, u.id
+        LIMIT :limit
+        """)
+    List<UserResponseDTO> findPageAfter(@Param("createdAt") OffsetDateTime createdAt,
+                                        @Param("id") UUID id,
+                                        @Param("limit") int limit);
+
+    /**
+     * Every email, read through a server-side cursor to build the email Bloom filter; needs a transaction.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT u.email FROM User u WHERE u.email IS NOT NULL")
+    Stream<String> streamAllEmails();
+
+    /**
+     * Whole table as DTOs read through a server-side cursor. The fetch size only takes effect
+     * inside a transaction; DTOs never enter the persistence context, so memory stays flat.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("""
+        SELECT new org.strelnikova.user.service.controller.dto.UserResponseDTO(u.id, u.name, u.email, u.age, u.createdAt, u.version)
+        FROM User u
+        ORDER BY u.createdAt, u.id
+        """)
+    Stream<UserResponseDTO> streamAllForExport();
 }
@@ -0,0 +1,17 @@
+package org.strelnikova.user.service.repository;
+
+import org.strelnikova.user.service.controller.dto.UserResponseDTO;
+import org.strelnikova.user.service.controller.dto.UserSearchFilter;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public interface UserSearchRepository {
+
+    /**
+     * Keyset page of users matching {@code filter}, in {@code (created_at, id)} order after the given
+     * position (from the beginning when {@code afterId} is {@code null}).
+     */
+    List<UserResponseDTO> search(UserSearchFilter filter, OffsetDateTime afterCreatedAt, UUID afterId, int limit);
+}
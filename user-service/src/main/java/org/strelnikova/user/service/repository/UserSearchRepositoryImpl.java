@@ -0,0 +1,93 @@
+package org.strelnikova.user.service.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.strelnikova.user.service.controller.dto.UserResponseDTO;
+import org.strelnikova.user.service.controller.dto.UserSearchFilter;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Builds the search query from the filters actually given instead of {@code :param IS NULL OR ...}
+ * predicates, which PostgreSQL cannot plan onto an index. Each predicate uses the expression of its
+ * index from changeset 11: {@code lower(name)} (pg_trgm GIN), {@code lower(email)} (text_pattern_ops
+ * btree) and {@code age} (btree).
+ * <p>
+ * User input is always bound. The btree range for {@code LIKE 'abc%'} is derived from the bound
+ * pattern in custom plans, which PostgreSQL keeps choosing for this query under the default
+ * {@code plan_cache_mode=auto} once pgjdbc server-prepares it.
+ */
+public class UserSearchRepositoryImpl implements UserSearchRepository {
+
+    private static final char LIKE_ESCAPE = '!';
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<UserResponseDTO> search(UserSearchFilter filter, OffsetDateTime afterCreatedAt, UUID afterId,
+                                        int limit) {
+        TypedQuery<UserResponseDTO> query = entityManager.createQuery(
+                buildQuery(filter, afterId != null), UserResponseDTO.class);
+        if (filter.emailPrefix() != null) {
+            query.setParameter("emailPrefix", emailPrefixPattern(filter.emailPrefix()));
+        }
+        if (filter.name() != null) {
+            query.setParameter("name", "%" + escapeLike(filter.name().toLowerCase(Locale.ROOT)) + "%");
+        }
+        if (filter.minAge() != null) {
+            query.setParameter("minAge", filter.minAge());
+        }
+        if (filter.maxAge() != null) {
+            query.setParameter("maxAge", filter.maxAge());
+        }
+        if (afterId != null) {
+            query.setParameter("createdAt", afterCreatedAt);
+            query.setParameter("id", afterId);
+        }
+        return query.setMaxResults(limit).getResultList();
+    }
+
+    static String buildQuery(UserSearchFilter filter, boolean afterCursor) {
+        StringBuilder hql = new StringBuilder("""
+                SELECT new org.strelnikova.user.service.controller.dto.UserResponseDTO(u.id, u.name, u.email, u.age, u.createdAt, u.version)
+                FROM User u
+                WHERE 1 = 1
+                """);
+        if (filter.emailPrefix() != null) {
+            hql.append("AND lower(u.email) LIKE :emailPrefix ESCAPE '").append(LIKE_ESCAPE).append("'\n");
+        }
+        if (filter.name() != null) {
+            hql.append("AND lower(u.name) LIKE :name ESCAPE '").append(LIKE_ESCAPE).append("'\n");
+        }
+        if (filter.minAge() != null) {
+            hql.append("AND u.age >= :minAge\n");
+        }
+        if (filter.maxAge() != null) {
+            hql.append("AND u.age <= :maxAge\n");
+        }
+        if (afterCursor) {
+            hql.append("AND (u.createdAt, u.id) > (:createdAt, :id)\n");
+        }
+        return hql.append("ORDER BY u.createdAt, u.id").toString();
+    }
+
+    static String emailPrefixPattern(String emailPrefix) {
+        return escapeLike(emailPrefix.toLowerCase(Locale.ROOT)) + "%";
+    }
+
+    static String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c == LIKE_ESCAPE || c == '%' || c == '_') {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
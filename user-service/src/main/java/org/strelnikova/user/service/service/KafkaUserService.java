@@ -1,41 +1,111 @@
 package org.strelnikova.user.service.service;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
-import org.strelnikova.user.service.model.UserEventType;
-import org.strelnikova.user.service.model.UserEvent;
 
-import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class KafkaUserService {
-    private final KafkaTemplate<String, UserEvent> kafkaTemplate;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final Semaphore inFlightPermits;
 
     @Value("${app.kafka.topic.user-events}")
     private String userEventsTopic;
 
-    public void sendUserEvent(String userName , String email, UserEventType eventType) {
-        UserEvent event = new UserEvent(userName, email, eventType, Instant.now());
+    @Value("${app.kafka.producer.send-timeout-ms:5000}")
+    private long sendTimeoutMs;
+
+    @Value("${app.kafka.producer.transaction-id-prefix:${spring.application.name}-outbox}")
+    private String transactionIdPrefix;
+
+    private final Map<Integer, KafkaTemplate<String, byte[]>> shardTemplates = new ConcurrentHashMap<>();
+
+    public KafkaUserService(KafkaTemplate<String, byte[]> kafkaTemplate,
+                            @Value("${app.kafka.producer.max-in-flight:1000}") int maxInFlight) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.inFlightPermits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Hands an already serialized user event to the producer without waiting for the broker, so callers
+     * can pipeline many sends and let the producer batch them. Records are keyed by the user id so that
+     * all events of one user land in the same partition and keep their order.
+     * <p>
+     * At most {@code app.kafka.producer.max-in-flight} sends may be unacknowledged at a time; when
+     * no permit frees up within the send timeout the returned future fails instead of blocking further.
+     */
+    public CompletableFuture<SendResult<String, byte[]>> sendUserEventAsync(String key, byte[] value,
+                                                                            List<Header> headers) {
+        try {
+            if (!inFlightPermits.tryAcquire(sendTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return CompletableFuture.failedFuture(
+                        new IllegalStateException("Too many in-flight Kafka sends, event not sent for key " + key));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<SendResult<String, byte[]>> future;
         try {
-            SendResult<String, UserEvent> result = kafkaTemplate
-                    .send(userEventsTopic, userName, event)
-                    .get(5, TimeUnit.SECONDS);
-
-            log.info("Sent event: {} to topic {}, partition {}, offset {}",
-                    event, userEventsTopic,
-                    result.getRecordMetadata().partition(),
-                    result.getRecordMetadata().offset());
-
-        } catch (Exception e) {
-            log.error("Failed to send event: {}", event, e);
-            throw new RuntimeException("Kafka send failed", e);
+            future = kafkaTemplate.send(new ProducerRecord<>(userEventsTopic, null, key, value, headers));
+        } catch (RuntimeException e) {
+            inFlightPermits.release();
+            log.error("Failed to send event with key {}", key, e);
+            return CompletableFuture.failedFuture(e);
         }
+
+        return future.whenComplete((result, ex) -> {
+            inFlightPermits.release();
+            if (ex != null) {
+                log.error("Failed to send event with key {}", key, ex);
+            } else {
+                log.debug("Sent event with key {} to topic {}, partition {}, offset {}",
+                        key, userEventsTopic,
+                        result.getRecordMetadata().partition(),
+                        result.getRecordMetadata().offset());
+            }
+        });
+    }
+
+    public boolean isTransactional() {
+        return kafkaTemplate.isTransactional();
+    }
+
+    /**
+     * Publishes the records of one outbox shard in a single Kafka transaction. The
+     * {@code transactional.id} is derived from the shard, so it stays the same across restarts and
+     * moves with the shard lease: the instance that takes a shard over fences the previous owner and
+     * aborts whatever it left open. Throws when the transaction is aborted; {@code read_committed}
+     * consumers then see none of the records.
+     */
+    public void sendUserEventsInTransaction(int shard, List<UserEventRecord> records) {
+        shardTemplates.computeIfAbsent(shard, this::createShardTemplate).executeInTransaction(operations -> {
+            for (UserEventRecord record : records) {
+                operations.send(new ProducerRecord<>(userEventsTopic, null, record.key(), record.value(), record.headers()));
+            }
+            return null;
+        });
+        log.debug("Committed Kafka transaction with {} events of outbox shard {}", records.size(), shard);
+    }
+
+    private KafkaTemplate<String, byte[]> createShardTemplate(int shard) {
+        KafkaTemplate<String, byte[]> template = new KafkaTemplate<>(kafkaTemplate.getProducerFactory());
+        template.setTransactionIdPrefix(transactionIdPrefix + "-shard-" + shard + "-");
+        return template;
     }
+
+    public record UserEventRecord(String key, byte[] value, List<Header> headers) {}
 }
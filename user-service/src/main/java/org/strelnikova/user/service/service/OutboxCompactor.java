@@ -0,0 +1,145 @@
+package org.strelnikova.user.service.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.strelnikova.user.service.model.UserEvent;
+import org.strelnikova.user.service.model.UserEventType;
+import org.strelnikova.user.service.model.outbox.OutboxEvent;
+import tools.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Collapses consecutive claimed events of one aggregate before the relay publishes them.
+ * Rules have the form {@code CREATED+UPDATED=CREATED}: when an event of the left type is directly
+ * followed by one of the right type, only the later event is published, carrying the resulting
+ * type and the latest user state. Rules are applied left to right, so CREATED, UPDATED, UPDATED
+ * collapses into a single CREATED. Pairs without a rule are published unchanged.
+ */
+@Slf4j
+@Component
+public class OutboxCompactor {
+
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final Map<String, UserEventType> rules = new HashMap<>();
+
+    public OutboxCompactor(ObjectMapper objectMapper,
+                           @Value("${app.outbox.compaction.enabled:false}") boolean enabled,
+                           @Value("${app.outbox.compaction.rules:CREATED+UPDATED=CREATED,UPDATED+UPDATED=UPDATED}")
+                           String[] rules) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        for (String rule : rules) {
+            String[] sides = rule.trim().split("=");
+            String[] pair = sides[0].split("\\+");
+            if (sides.length != 2 || pair.length != 2) {
+                throw new IllegalArgumentException("Invalid outbox compaction rule: " + rule);
+            }
+            UserEventType earlier = UserEventType.valueOf(pair[0].trim());
+            UserEventType later = UserEventType.valueOf(pair[1].trim());
+            this.rules.put(ruleKey(earlier, later), UserEventType.valueOf(sides[1].trim()));
+        }
+    }
+
+    /**
+     * Returns the events to publish, in claim order per aggregate, together with the ids each
+     * published event supersedes. The superseded rows must only be marked COMPACTED once the
+     * event that replaces them has been acknowledged; until then they stay PENDING.
+     */
+    public Compaction compact(List<OutboxEvent> batch) {
+        if (!enabled) {
+            return new Compaction(batch, Map.of());
+        }
+
+        Map<UUID, List<OutboxEvent>> eventsByAggregate = new LinkedHashMap<>();
+        for (OutboxEvent event : batch) {
+            eventsByAggregate.computeIfAbsent(event.getAggregateId(), id -> new ArrayList<>()).add(event);
+        }
+
+        List<OutboxEvent> events = new ArrayList<>(batch.size());
+        Map<UUID, List<UUID>> superseded = new HashMap<>();
+        for (List<OutboxEvent> aggregateEvents : eventsByAggregate.values()) {
+            List<OutboxEvent> run = new ArrayList<>();
+            UserEventType runType = null;
+            for (OutboxEvent event : aggregateEvents) {
+                UserEventType merged = run.isEmpty() ? null : mergedType(runType, run.get(run.size() - 1), event);
+                if (merged != null) {
+                    run.add(event);
+                    runType = merged;
+                    continue;
+                }
+                flush(run, runType, events, superseded);
+                run = new ArrayList<>(List.of(event));
+                runType = UserEventType.valueOf(event.getEventType());
+            }
+            flush(run, runType, events, superseded);
+        }
+        return new Compaction(events, superseded);
+    }
+
+    private UserEventType mergedType(UserEventType runType, OutboxEvent previous, OutboxEvent next) {
+        // Rows written before record bytes were stored are never merged
+        if (previous.getRecordValue() == null || next.getRecordValue() == null) {
+            return null;
+        }
+        return rules.get(ruleKey(runType, UserEventType.valueOf(next.getEventType())));
+    }
+
+    private void flush(List<OutboxEvent> run, UserEventType runType,
+                       List<OutboxEvent> events, Map<UUID, List<UUID>> superseded) {
+        if (run.isEmpty()) {
+            return;
+        }
+        if (run.size() == 1) {
+            events.add(run.get(0));
+            return;
+        }
+
+        OutboxEvent latest = run.get(run.size() - 1);
+        OutboxEvent survivor;
+        try {
+            survivor = runType.name().equals(latest.getEventType()) ? latest : retyped(latest, runType, run.get(0));
+        } catch (Exception e) {
+            log.warn("Cannot compact outbox events of aggregate {}, publishing them one by one: {}",
+                    latest.getAggregateId(), e.getMessage());
+            events.addAll(run);
+            return;
+        }
+
+        events.add(survivor);
+        superseded.put(survivor.getId(), run.subList(0, run.size() - 1).stream().map(OutboxEvent::getId).toList());
+    }
+
+    /**
+     * Copy of the latest event with the merged type written into both the row and the record value.
+     * The copy is never attached to the persistence context, so the stored row stays untouched.
+     */
+    private OutboxEvent retyped(OutboxEvent latest, UserEventType type, OutboxEvent first) {
+        UserEvent state = objectMapper.readValue(latest.getRecordValue(), UserEvent.class);
+        byte[] value = objectMapper.writeValueAsBytes(new UserEvent(state.userName(), state.email(), type, state.time()));
+
+        OutboxEvent copy = new OutboxEvent(latest.getAggregateId(), type.name(), latest.getRecordKey(), value);
+        copy.setId(latest.getId());
+        copy.setRetryCount(latest.getRetryCount());
+        copy.setCreatedAt(first.getCreatedAt());
+        return copy;
+    }
+
+    private static String ruleKey(UserEventType earlier, UserEventType later) {
+        return earlier + "+" + later;
+    }
+
+    public record Compaction(List<OutboxEvent> events, Map<UUID, List<UUID>> superseded) {
+
+        public List<UUID> supersededBy(UUID eventId) {
+            return superseded.getOrDefault(eventId, List.of());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.strelnikova.user.service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.strelnikova.user.service.model.outbox.OutboxBacklogStats;
+import org.strelnikova.user.service.model.outbox.OutboxEvent;
+import org.strelnikova.user.service.repository.OutboxEventRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer view of the outbox relay. Backlog gauges are refreshed by one query on a schedule
+ * rather than on every scrape; counters and timers are fed by {@link OutboxProcessor}.
+ */
+@Slf4j
+@Component
+public class OutboxMetrics {
+
+    private final OutboxEventRepository outboxEventRepository;
+
+    private final Counter sentEvents;
+    private final Counter failedAttempts;
+    private final Counter compactedEvents;
+    private final DistributionSummary attemptsPerEvent;
+    private final Timer publishLatency;
+    private final Timer deliveryDelay;
+
+    private volatile double pending;
+    private volatile double failed;
+    private volatile double oldestPendingAgeSeconds;
+
+    public OutboxMetrics(OutboxEventRepository outboxEventRepository, MeterRegistry meterRegistry) {
+        this.outboxEventRepository = outboxEventRepository;
+
+        Gauge.builder("outbox.events.pending", this, metrics -> metrics.pending)
+                .description("PENDING outbox events, including those waiting for a retry")
+                .register(meterRegistry);
+        Gauge.builder("outbox.events.failed", this, metrics -> metrics.failed)
+                .description("Outbox events that ran out of retries, including the dead-letter table")
+                .register(meterRegistry);
+        Gauge.builder("outbox.events.oldest.pending.age", this, metrics -> metrics.oldestPendingAgeSeconds)
+                .description("Age of the oldest PENDING outbox event")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+
+        this.sentEvents = Counter.builder("outbox.events.sent")
+                .description("Outbox events acknowledged by Kafka")
+                .register(meterRegistry);
+        this.failedAttempts = Counter.builder("outbox.events.failed.attempts")
+                .description("Failed publish attempts, each one scheduled for a retry or moved to FAILED")
+                .register(meterRegistry);
+        this.compactedEvents = Counter.builder("outbox.events.compacted")
+                .description("Outbox events superseded by a later event of the same aggregate and not published")
+                .register(meterRegistry);
+        this.attemptsPerEvent = DistributionSummary.builder("outbox.events.attempts")
+                .description("Publish attempts an outbox event needed until it was acknowledged")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.publishLatency = Timer.builder("outbox.publish.latency")
+                .description("Time from handing an outbox event to the producer until the broker ack")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.deliveryDelay = Timer.builder("outbox.delivery.delay")
+                .description("Time from writing an outbox event until the broker ack")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.metrics.refresh-interval-ms:15000}")
+    public void refreshBacklog() {
+        try {
+            OutboxBacklogStats stats = outboxEventRepository.findBacklogStats();
+            pending = stats.getPending();
+            failed = stats.getFailed();
+            oldestPendingAgeSeconds = stats.getOldestPendingAgeSeconds() != null
+                    ? stats.getOldestPendingAgeSeconds() : 0;
+        } catch (Exception e) {
+            log.warn("Cannot refresh outbox backlog metrics: {}", e.getMessage());
+        }
+    }
+
+    public void recordSent(OutboxEvent event, long publishNanos) {
+        sentEvents.increment();
+        attemptsPerEvent.record(event.getRetryCount() + 1);
+        publishLatency.record(publishNanos, TimeUnit.NANOSECONDS);
+        if (event.getCreatedAt() != null) {
+            deliveryDelay.record(Duration.between(event.getCreatedAt(), Instant.now()));
+        }
+    }
+
+    public void recordFailedAttempts(int count) {
+        failedAttempts.increment(count);
+    }
+
+    public void recordCompacted(int count) {
+        compactedEvents.increment(count);
+    }
+}
@@ -0,0 +1,116 @@
+package org.strelnikova.user.service.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Wakes the outbox relay as soon as an {@code outbox_events} insert commits.
+ * Holds one dedicated connection outside the Hikari pool that does nothing but LISTEN,
+ * so an idle system issues no relay queries; the polling schedule stays as a safety net.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.outbox.notify.enabled", havingValue = "true")
+public class OutboxNotificationListener implements SmartLifecycle {
+
+    private static final String CHANNEL = "outbox_events";
+    private static final int WAIT_TIMEOUT_MS = 10_000;
+
+    private final OutboxProcessor outboxProcessor;
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${spring.datasource.username}")
+    private String username;
+
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    @Value("${app.outbox.notify.reconnect-delay-ms:5000}")
+    private long reconnectDelayMs;
+
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    public OutboxNotificationListener(OutboxProcessor outboxProcessor) {
+        this.outboxProcessor = outboxProcessor;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        listenerThread = new Thread(this::listen, "outbox-notify-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                log.info("Listening for outbox notifications on channel {}", CHANNEL);
+
+                // Rows committed while we were not listening have produced no notification
+                relay();
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(WAIT_TIMEOUT_MS);
+                    if (notifications != null && notifications.length > 0) {
+                        relay();
+                    }
+                }
+            } catch (SQLException e) {
+                if (running) {
+                    log.warn("Outbox notification connection lost, reconnecting in {} ms: {}",
+                            reconnectDelayMs, e.getMessage());
+                    sleepBeforeReconnect();
+                }
+            }
+        }
+        log.info("Outbox notification listener stopped");
+    }
+
+    private void relay() {
+        try {
+            outboxProcessor.processOutboxEvents();
+        } catch (Exception e) {
+            log.error("Outbox relay triggered by notification failed", e);
+        }
+    }
+
+    private void sleepBeforeReconnect() {
+        try {
+            Thread.sleep(reconnectDelayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -1,87 +1,321 @@
 package org.strelnikova.user.service.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.strelnikova.user.service.model.UserEvent;
 import org.strelnikova.user.service.model.UserEventType;
 import org.strelnikova.user.service.model.outbox.OutboxEvent;
-import org.strelnikova.user.service.model.outbox.OutboxStatus;
 import org.strelnikova.user.service.model.outbox.dto.UserEventPayload;
 import org.strelnikova.user.service.repository.OutboxEventRepository;
+import org.strelnikova.user.service.service.KafkaUserService.UserEventRecord;
+import org.strelnikova.user.service.service.OutboxCompactor.Compaction;
 import tools.jackson.databind.ObjectMapper;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Slf4j
 @Component
 
 public class OutboxProcessor {
 
+    static final String HEADER_EVENT_ID = "outbox-event-id";
+    static final String HEADER_EVENT_TYPE = "event-type";
+
     private final OutboxEventRepository outboxEventRepository;
     private final KafkaUserService kafkaUserService;
     private final ObjectMapper objectMapper;
+    private final OutboxShardLeaseManager shardLeaseManager;
+    private final OutboxCompactor outboxCompactor;
+    private final OutboxMetrics outboxMetrics;
     private final OutboxProcessor self;
 
+    @Value("${app.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.outbox.drain-until-empty:true}")
+    private boolean drainUntilEmpty;
+
+    @Value("${app.outbox.send-timeout-ms:30000}")
+    private long sendTimeoutMs;
+
+    @Value("${app.outbox.retry.max-attempts:10}")
+    private int maxRetries;
+
+    @Value("${app.outbox.retry.base-delay-seconds:5}")
+    private int retryBaseDelaySeconds;
+
+    @Value("${app.outbox.retry.max-delay-seconds:300}")
+    private int retryMaxDelaySeconds;
+
+    private final ReentrantLock relayLock = new ReentrantLock();
+    private final AtomicBoolean rerunRequested = new AtomicBoolean();
+
     public OutboxProcessor(OutboxEventRepository outboxEventRepository,
                            KafkaUserService kafkaUserService,
                            ObjectMapper objectMapper,
+                           OutboxShardLeaseManager shardLeaseManager,
+                           OutboxCompactor outboxCompactor,
+                           OutboxMetrics outboxMetrics,
                            @Lazy OutboxProcessor self) {
         this.outboxEventRepository = outboxEventRepository;
         this.kafkaUserService = kafkaUserService;
         this.objectMapper = objectMapper;
+        this.shardLeaseManager = shardLeaseManager;
+        this.outboxCompactor = outboxCompactor;
+        this.outboxMetrics = outboxMetrics;
         this.self = self;
     }
 
-    @Scheduled(fixedDelay = 5000)
+    /**
+     * Entry point for both the polling schedule and {@link OutboxNotificationListener}.
+     * Only one caller drains at a time; a call that arrives while a drain is running
+     * leaves a rerun request behind instead of blocking, so no wakeup is lost.
+     */
+    @Scheduled(fixedDelayString = "${app.outbox.poll-interval-ms:5000}")
     public void processOutboxEvents() {
-        List<OutboxEvent> pendingEvents = outboxEventRepository.findPendingEvents();
-        log.info("Found {} pending outbox events", pendingEvents.size());
-
-        for (OutboxEvent event : pendingEvents) {
+        rerunRequested.set(true);
+        while (rerunRequested.get() && relayLock.tryLock()) {
             try {
-                self.processSingleEvent(event.getId());
-            } catch (Exception e) {
-                log.error("Failed to process event {}: {}", event.getId(), e.getMessage());
+                rerunRequested.set(false);
+                drain();
+            } finally {
+                relayLock.unlock();
             }
         }
     }
 
+    private void drain() {
+        int relayed = 0;
+        BatchResult result;
+        do {
+            result = self.processBatch();
+            relayed += result.sent();
+        } while (drainUntilEmpty && result.claimed() == batchSize && result.failed() == 0);
+
+        if (relayed > 0) {
+            log.info("Relayed {} outbox events", relayed);
+        }
+    }
+
+    /**
+     * Claims up to {@code batchSize} pending rows with FOR UPDATE SKIP LOCKED, publishes them
+     * and records the outcome with one bulk UPDATE per status. The row locks are held until
+     * commit, so concurrent relays never pick the same rows. With sharding enabled only rows
+     * of shards leased by this instance are claimed.
+     * <p>
+     * By default sends are pipelined: the oldest pending event of every aggregate in the batch goes out at
+     * once and the acks are collected afterwards. Later events of an aggregate follow in the next
+     * wave, and only after the previous one was acknowledged, so one user's events never overtake
+     * each other; after a failure the rest of that aggregate stays PENDING for the next batch.
+     * With a transactional producer each shard of the batch is published in one Kafka transaction instead.
+     * <p>
+     * With compaction enabled, runs of events of one aggregate are first merged by {@link OutboxCompactor};
+     * the rows a published event replaced are marked COMPACTED together with it.
+     */
     @Transactional(propagation = Propagation.REQUIRES_NEW)
-    public void processSingleEvent(UUID eventId) {
-        OutboxEvent event = outboxEventRepository.findById(eventId)
-                .orElseThrow(() -> new RuntimeException("Outbox event not found: " + eventId));
+    public BatchResult processBatch() {
+        List<OutboxEvent> batch = shardLeaseManager.isEnabled()
+                ? outboxEventRepository.claimPendingBatchForOwner(shardLeaseManager.getInstanceId(), batchSize)
+                : outboxEventRepository.claimPendingBatch(batchSize);
+        log.debug("Claimed {} pending outbox events", batch.size());
+        if (batch.isEmpty()) {
+            return new BatchResult(0, 0, 0);
+        }
 
-        if (event.getStatus() != OutboxStatus.PENDING) {
-            log.info("Event {} is no longer PENDING, skipping", eventId);
-            return;
+        Compaction compaction = outboxCompactor.compact(batch);
+        List<UUID> sentIds = new ArrayList<>(batch.size());
+        List<UUID> failedIds = new ArrayList<>();
+        if (kafkaUserService.isTransactional()) {
+            publishInShardTransactions(compaction.events(), sentIds, failedIds);
+        } else {
+            publishPipelined(compaction.events(), sentIds, failedIds);
         }
 
-        try {
-            UserEventPayload payload = objectMapper.readValue(event.getPayload(), UserEventPayload.class);
-            UserEventType eventType = UserEventType.valueOf(event.getEventType());
+        Map<UUID, Instant> createdAtById = new HashMap<>();
+        batch.forEach(event -> createdAtById.put(event.getId(), event.getCreatedAt()));
+        if (!sentIds.isEmpty()) {
+            outboxEventRepository.markSent(sentIds, createdAts(sentIds, createdAtById));
+        }
+        List<UUID> compactedIds = sentIds.stream().flatMap(id -> compaction.supersededBy(id).stream()).toList();
+        if (!compactedIds.isEmpty()) {
+            outboxEventRepository.markCompacted(compactedIds, createdAts(compactedIds, createdAtById));
+            outboxMetrics.recordCompacted(compactedIds.size());
+        }
+        if (!failedIds.isEmpty()) {
+            outboxEventRepository.markFailedAttempt(failedIds, createdAts(failedIds, createdAtById),
+                    maxRetries, retryBaseDelaySeconds, retryMaxDelaySeconds);
+            outboxMetrics.recordFailedAttempts(failedIds.size());
+        }
 
-            kafkaUserService.sendUserEvent(payload.getUserName(), payload.getEmail(), eventType);
+        return new BatchResult(batch.size(), sentIds.size(), failedIds.size());
+    }
 
-            event.setStatus(OutboxStatus.SENT);
-            outboxEventRepository.save(event);
-            log.info("Successfully processed outbox event {}", eventId);
+    /** Partition keys of the given claimed rows, so that their status update only touches those partitions. */
+    private static List<Instant> createdAts(List<UUID> ids, Map<UUID, Instant> createdAtById) {
+        return ids.stream().map(createdAtById::get).distinct().toList();
+    }
 
-        } catch (Exception e) {
-            log.error("Error processing outbox event {}", eventId, e);
+    private void publishPipelined(List<OutboxEvent> batch, List<UUID> sentIds, List<UUID> failedIds) {
+        Map<UUID, Deque<OutboxEvent>> pendingByAggregate = new LinkedHashMap<>();
+        for (OutboxEvent event : batch) {
+            pendingByAggregate.computeIfAbsent(event.getAggregateId(), id -> new ArrayDeque<>()).add(event);
+        }
+
+        while (!pendingByAggregate.isEmpty()) {
+            Map<OutboxEvent, CompletableFuture<Long>> wave = new LinkedHashMap<>();
+            for (Deque<OutboxEvent> events : pendingByAggregate.values()) {
+                OutboxEvent event = events.peekFirst();
+                wave.put(event, publish(event));
+            }
+
+            awaitAcks(wave.values());
 
-            int retryCount = event.getRetryCount() + 1;
-            event.setRetryCount(retryCount);
+            for (Map.Entry<OutboxEvent, CompletableFuture<Long>> sent : wave.entrySet()) {
+                OutboxEvent event = sent.getKey();
+                CompletableFuture<Long> ack = sent.getValue();
+                Deque<OutboxEvent> events = pendingByAggregate.get(event.getAggregateId());
 
-            if (retryCount >= 5) {
-                event.setStatus(OutboxStatus.FAILED);
-                log.warn("Outbox event {} reached max retries, marking as FAILED", eventId);
+                if (ack.isDone() && !ack.isCompletedExceptionally()) {
+                    sentIds.add(event.getId());
+                    outboxMetrics.recordSent(event, ack.join());
+                    events.pollFirst();
+                    if (events.isEmpty()) {
+                        pendingByAggregate.remove(event.getAggregateId());
+                    }
+                } else {
+                    log.error("Error processing outbox event {}", event.getId());
+                    failedIds.add(event.getId());
+                    pendingByAggregate.remove(event.getAggregateId());
+                }
             }
+        }
+    }
+
+    /**
+     * Transactional mode: the events of each shard go out in one Kafka transaction, which is
+     * committed right before the DB status update of the batch. An aborted transaction turns all
+     * its events into failed attempts, so no partial batch ever becomes visible to consumers.
+     * If the DB update fails after the Kafka commit, the batch is published again; consumers
+     * drop the repeats by the {@value #HEADER_EVENT_ID} header, as notification-service does.
+     * An event whose record cannot be built fails alone; later events of its aggregate wait.
+     */
+    private void publishInShardTransactions(List<OutboxEvent> batch, List<UUID> sentIds, List<UUID> failedIds) {
+        Map<Integer, List<OutboxEvent>> eventsByShard = new LinkedHashMap<>();
+        for (OutboxEvent event : batch) {
+            eventsByShard.computeIfAbsent(event.getShard(), shard -> new ArrayList<>()).add(event);
+        }
+
+        Set<UUID> blockedAggregates = new HashSet<>();
+        for (Map.Entry<Integer, List<OutboxEvent>> shardEvents : eventsByShard.entrySet()) {
+            List<OutboxEvent> events = new ArrayList<>();
+            List<UserEventRecord> records = new ArrayList<>();
+            for (OutboxEvent event : shardEvents.getValue()) {
+                if (blockedAggregates.contains(event.getAggregateId())) {
+                    continue;
+                }
+                try {
+                    records.add(toRecord(event));
+                    events.add(event);
+                } catch (Exception e) {
+                    log.error("Cannot build Kafka record for outbox event {}", event.getId(), e);
+                    failedIds.add(event.getId());
+                    blockedAggregates.add(event.getAggregateId());
+                }
+            }
+            if (records.isEmpty()) {
+                continue;
+            }
+
+            try {
+                long start = System.nanoTime();
+                kafkaUserService.sendUserEventsInTransaction(shardEvents.getKey(), records);
+                long publishNanos = System.nanoTime() - start;
+                for (OutboxEvent event : events) {
+                    sentIds.add(event.getId());
+                    outboxMetrics.recordSent(event, publishNanos);
+                }
+            } catch (Exception e) {
+                log.error("Kafka transaction for outbox shard {} aborted", shardEvents.getKey(), e);
+                events.forEach(event -> failedIds.add(event.getId()));
+            }
+        }
+    }
 
-            outboxEventRepository.save(event);
+    /**
+     * Sends the record bytes stored at write time as they are. Rows written before the record
+     * columns existed only carry the JSON payload and are converted once here.
+     * The returned future completes with the send-to-ack time in nanoseconds.
+     */
+    private CompletableFuture<Long> publish(OutboxEvent event) {
+        try {
+            UserEventRecord record = toRecord(event);
+            long start = System.nanoTime();
+            return kafkaUserService.sendUserEventAsync(record.key(), record.value(), record.headers())
+                    .thenApply(result -> System.nanoTime() - start);
+        } catch (Exception e) {
+            log.error("Cannot build Kafka record for outbox event {}", event.getId(), e);
+            return CompletableFuture.failedFuture(e);
         }
     }
-}
\ No newline at end of file
+
+    private UserEventRecord toRecord(OutboxEvent event) {
+        String key = event.getRecordKey() != null ? event.getRecordKey() : event.getAggregateId().toString();
+        byte[] value = event.getRecordValue() != null ? event.getRecordValue() : legacyRecordValue(event);
+        return new UserEventRecord(key, value, headersOf(event));
+    }
+
+    private byte[] legacyRecordValue(OutboxEvent event) {
+        UserEventPayload payload = objectMapper.readValue(event.getPayload(), UserEventPayload.class);
+        UserEvent userEvent = new UserEvent(payload.getUserName(), payload.getEmail(),
+                UserEventType.valueOf(event.getEventType()), event.getCreatedAt());
+        return objectMapper.writeValueAsBytes(userEvent);
+    }
+
+    private static List<Header> headersOf(OutboxEvent event) {
+        return List.of(
+                new RecordHeader(HEADER_EVENT_ID, event.getId().toString().getBytes(StandardCharsets.UTF_8)),
+                new RecordHeader(HEADER_EVENT_TYPE, event.getEventType().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Waits for the whole wave; sends still unacknowledged after the timeout count as failed
+     * attempts and are retried, which may publish them twice but never loses them.
+     */
+    private void awaitAcks(Collection<? extends CompletableFuture<?>> acks) {
+        try {
+            CompletableFuture.allOf(acks.toArray(CompletableFuture[]::new))
+                    .get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Not all outbox sends were acknowledged: {}", e.getMessage());
+        }
+    }
+
+    public record BatchResult(int claimed, int sent, int failed) {}
+}
@@ -0,0 +1,281 @@
+package org.strelnikova.user.service.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.strelnikova.user.service.repository.OutboxEventRepository;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Housekeeping for the day-partitioned {@code outbox_events} table: creates the partitions for the
+ * next days, moves FAILED rows to {@code outbox_events_dead_letter} and drops (or moves to the
+ * {@code outbox_archive} schema) daily partitions that are past retention and hold only SENT or COMPACTED rows.
+ * Replicas coordinate through a Postgres advisory lock, so only one of them runs the job, including
+ * the dead-letter move, at a time.
+ * <p>
+ * Partitions are detached with {@code DETACH PARTITION ... CONCURRENTLY}, which does not block relay
+ * claims or outbox inserts, and only dropped once detached. PostgreSQL refuses a concurrent detach
+ * while the table has a default partition, so the default partition is retired as soon as its
+ * pre-partitioning rows are gone; until then detaches take the brief exclusive lock. Every statement
+ * runs under {@code app.outbox.retention.lock-timeout-ms}, so the job gives up until the next run
+ * instead of queueing behind the relay and everything queued behind it.
+ */
+@Slf4j
+@Component
+public class OutboxRetentionJob {
+
+    private static final long ADVISORY_LOCK_KEY = 0x6f7574626f78L;
+    private static final String PARTITION_PREFIX = "outbox_events_p";
+    private static final Pattern PARTITION_NAME = Pattern.compile(PARTITION_PREFIX + "(\\d{8})");
+    private static final DateTimeFormatter PARTITION_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final String DEFAULT_PARTITION = "outbox_events_default";
+    private static final int DEFAULT_PARTITION_DELETE_LIMIT = 10_000;
+    private static final String LOCK_NOT_AVAILABLE = "55P03";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OutboxEventRepository outboxEventRepository;
+
+    @Value("${app.outbox.retention.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.outbox.retention.sent-retention-days:7}")
+    private int sentRetentionDays;
+
+    @Value("${app.outbox.retention.partitions-ahead:3}")
+    private int partitionsAhead;
+
+    @Value("${app.outbox.retention.archive:false}")
+    private boolean archive;
+
+    @Value("${app.outbox.retention.lock-timeout-ms:2000}")
+    private long lockTimeoutMs;
+
+    public OutboxRetentionJob(JdbcTemplate jdbcTemplate, OutboxEventRepository outboxEventRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.outboxEventRepository = outboxEventRepository;
+    }
+
+    @Scheduled(initialDelay = 30_000, fixedDelayString = "${app.outbox.retention.interval-ms:3600000}")
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                if (!tryLock(connection)) {
+                    log.debug("Outbox retention is running on another instance, skipping");
+                    return null;
+                }
+                try {
+                    // Own transaction on another connection; the lock held by this one keeps other replicas out
+                    int moved = outboxEventRepository.moveFailedToDeadLetter();
+                    if (moved > 0) {
+                        log.warn("Moved {} FAILED outbox events to outbox_events_dead_letter", moved);
+                    }
+                    execute(connection, "SET lock_timeout = " + lockTimeoutMs);
+                    try {
+                        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+                        createPartitions(connection, today);
+                        boolean hasDefault = hasDefaultPartition(connection);
+                        finishPendingDetaches(connection);
+                        expirePartitions(connection, today.minusDays(sentRetentionDays), !hasDefault);
+                        if (hasDefault) {
+                            purgeDefaultPartition(connection);
+                        }
+                    } catch (SQLException e) {
+                        if (!LOCK_NOT_AVAILABLE.equals(e.getSQLState())) {
+                            throw e;
+                        }
+                        log.warn("Outbox partition maintenance hit the lock timeout, retrying on the next run");
+                    } finally {
+                        execute(connection, "RESET lock_timeout");
+                    }
+                } finally {
+                    unlock(connection);
+                }
+                return null;
+            });
+        } catch (DataAccessException e) {
+            log.error("Outbox partition maintenance failed", e);
+        }
+    }
+
+    private void createPartitions(Connection connection, LocalDate today) throws SQLException {
+        for (int i = 0; i <= partitionsAhead; i++) {
+            execute(connection, createPartitionSql(today.plusDays(i)));
+        }
+    }
+
+    /** Completes concurrent detaches that a previous run started but did not finish, e.g. on the lock timeout. */
+    private void finishPendingDetaches(Connection connection) throws SQLException {
+        for (String partition : listPartitions(connection, true)) {
+            execute(connection, "ALTER TABLE outbox_events DETACH PARTITION " + partition + " FINALIZE");
+            dispose(connection, partition);
+        }
+    }
+
+    /**
+     * A partition is only removed once its whole day is older than the retention period and it
+     * holds nothing but SENT and COMPACTED rows; PENDING rows keep it alive and FAILED rows have been moved away.
+     */
+    private void expirePartitions(Connection connection, LocalDate cutoff, boolean concurrently) throws SQLException {
+        for (String partition : partitionsBefore(listPartitions(connection, false), cutoff)) {
+            if (hasUnsentRows(connection, partition)) {
+                continue;
+            }
+            execute(connection, detachPartitionSql(partition, concurrently));
+            dispose(connection, partition);
+        }
+    }
+
+    /** Drops a detached partition, or moves it to the archive schema; neither touches {@code outbox_events}. */
+    private void dispose(Connection connection, String partition) throws SQLException {
+        if (archive) {
+            execute(connection, "ALTER TABLE " + partition + " SET SCHEMA outbox_archive");
+            log.info("Archived outbox partition {} to schema outbox_archive", partition);
+        } else {
+            execute(connection, "DROP TABLE " + partition);
+            log.info("Dropped outbox partition {}", partition);
+        }
+    }
+
+    /**
+     * Rows that predate partitioning live in the default partition and are deleted in slices. Once it
+     * is empty it is detached and dropped, which lets later detaches run concurrently; from then on the
+     * partitions created {@code partitions-ahead} days in advance must cover every insert.
+     */
+    private void purgeDefaultPartition(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            int deleted = statement.executeUpdate(purgeDefaultPartitionSql(sentRetentionDays));
+            if (deleted > 0) {
+                log.info("Deleted {} expired outbox events from the default partition", deleted);
+                return;
+            }
+        }
+        if (!queryBoolean(connection, "SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION + ")")) {
+            execute(connection, detachPartitionSql(DEFAULT_PARTITION, false));
+            execute(connection, "DROP TABLE " + DEFAULT_PARTITION);
+            log.info("Dropped the empty default outbox partition");
+        }
+    }
+
+    /** Children of {@code outbox_events}, either attached or left pending by an interrupted concurrent detach. */
+    private List<String> listPartitions(Connection connection, boolean detachPending) throws SQLException {
+        String sql = """
+            SELECT c.relname FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            JOIN pg_class p ON p.oid = i.inhparent
+            WHERE p.relname = 'outbox_events' AND i.inhdetachpending = %s
+            ORDER BY c.relname
+            """.formatted(detachPending);
+        List<String> partitions = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            while (rs.next()) {
+                partitions.add(rs.getString(1));
+            }
+        }
+        return partitions;
+    }
+
+    private boolean hasDefaultPartition(Connection connection) throws SQLException {
+        return queryBoolean(connection, """
+            SELECT EXISTS (SELECT 1 FROM pg_partitioned_table t
+            JOIN pg_class p ON p.oid = t.partrelid
+            WHERE p.relname = 'outbox_events' AND t.partdefid <> 0)
+            """);
+    }
+
+    private boolean hasUnsentRows(Connection connection, String partition) throws SQLException {
+        return queryBoolean(connection,
+                "SELECT EXISTS (SELECT 1 FROM " + partition + " WHERE status NOT IN ('SENT', 'COMPACTED'))");
+    }
+
+    private boolean queryBoolean(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    private void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private boolean tryLock(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT pg_try_advisory_lock(" + ADVISORY_LOCK_KEY + ")")) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    private void unlock(Connection connection) throws SQLException {
+        execute(connection, "SELECT pg_advisory_unlock(" + ADVISORY_LOCK_KEY + ")");
+    }
+
+    static String partitionName(LocalDate day) {
+        return PARTITION_PREFIX + day.format(PARTITION_DATE);
+    }
+
+    /** Day of a daily partition, or {@code null} for any other child (e.g. the default partition). */
+    static LocalDate partitionDay(String partition) {
+        Matcher matcher = PARTITION_NAME.matcher(partition);
+        if (!matcher.matches()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(matcher.group(1), PARTITION_DATE);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /** Daily partitions whose whole day lies before {@code cutoff}; the cutoff day itself is kept. */
+    static List<String> partitionsBefore(List<String> partitions, LocalDate cutoff) {
+        List<String> expired = new ArrayList<>();
+        for (String partition : partitions) {
+            LocalDate day = partitionDay(partition);
+            if (day != null && day.isBefore(cutoff)) {
+                expired.add(partition);
+            }
+        }
+        return expired;
+    }
+
+    static String createPartitionSql(LocalDate day) {
+        return "CREATE TABLE IF NOT EXISTS " + partitionName(day)
+                + " PARTITION OF outbox_events FOR VALUES FROM ('" + day + " 00:00:00+00') TO ('"
+                + day.plusDays(1) + " 00:00:00+00')";
+    }
+
+    /** Runs outside a transaction block: the job's connection is in auto-commit, as CONCURRENTLY requires. */
+    static String detachPartitionSql(String partition, boolean concurrently) {
+        return "ALTER TABLE outbox_events DETACH PARTITION " + partition + (concurrently ? " CONCURRENTLY" : "");
+    }
+
+    static String purgeDefaultPartitionSql(int retentionDays) {
+        return "DELETE FROM " + DEFAULT_PARTITION + " WHERE ctid IN ("
+                + "SELECT ctid FROM " + DEFAULT_PARTITION + " WHERE status IN ('SENT', 'COMPACTED') "
+                + "AND created_at < now() - make_interval(days => " + retentionDays + ") "
+                + "LIMIT " + DEFAULT_PARTITION_DELETE_LIMIT + ")";
+    }
+}
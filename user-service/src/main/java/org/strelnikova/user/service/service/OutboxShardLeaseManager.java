@@ -0,0 +1,89 @@
+package org.strelnikova.user.service.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.strelnikova.user.service.model.outbox.OutboxEvent;
+import org.strelnikova.user.service.repository.OutboxShardLeaseRepository;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Splits the {@link OutboxEvent#SHARD_COUNT} outbox shards between the live user-service replicas.
+ * Every instance heartbeats into {@code outbox_relay_instances} and keeps roughly
+ * {@code SHARD_COUNT / liveInstances} leases in {@code outbox_shard_leases}; the relay only claims
+ * rows of shards whose lease it currently holds, so each aggregate is published by one instance at a time.
+ */
+@Slf4j
+@Component
+public class OutboxShardLeaseManager {
+
+    private final OutboxShardLeaseRepository leaseRepository;
+    private final String instanceId;
+
+    @Value("${app.outbox.sharding.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.outbox.sharding.lease-ttl-seconds:30}")
+    private int leaseTtlSeconds;
+
+    private volatile List<Integer> ownedShards = List.of();
+
+    public OutboxShardLeaseManager(OutboxShardLeaseRepository leaseRepository,
+                                   @Value("${spring.application.name}") String applicationName) {
+        this.leaseRepository = leaseRepository;
+        this.instanceId = applicationName + "-" + UUID.randomUUID();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public List<Integer> getOwnedShards() {
+        return ownedShards;
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.sharding.heartbeat-interval-ms:10000}")
+    @Transactional
+    public void rebalance() {
+        if (!enabled) {
+            return;
+        }
+
+        leaseRepository.registerHeartbeat(instanceId);
+        leaseRepository.deleteStaleInstances(leaseTtlSeconds);
+        long liveInstances = Math.max(1, leaseRepository.countLiveInstances(leaseTtlSeconds));
+        int fairShare = (int) Math.ceil((double) OutboxEvent.SHARD_COUNT / liveInstances);
+
+        leaseRepository.renewLeases(instanceId, leaseTtlSeconds);
+        int owned = leaseRepository.findOwnedShards(instanceId).size();
+        if (owned > fairShare) {
+            leaseRepository.releaseShards(instanceId, owned - fairShare, leaseTtlSeconds);
+        } else if (owned < fairShare) {
+            leaseRepository.claimFreeShards(instanceId, fairShare - owned, leaseTtlSeconds);
+        }
+
+        List<Integer> shards = List.copyOf(leaseRepository.findOwnedShards(instanceId));
+        if (!shards.equals(ownedShards)) {
+            log.info("Relay instance {} owns {} of {} outbox shards ({} live instances)",
+                    instanceId, shards.size(), OutboxEvent.SHARD_COUNT, liveInstances);
+        }
+        ownedShards = shards;
+    }
+
+    @PreDestroy
+    public void unregister() {
+        if (enabled) {
+            // Leases are left to expire so an in-flight batch can still commit
+            leaseRepository.unregister(instanceId);
+        }
+    }
+}
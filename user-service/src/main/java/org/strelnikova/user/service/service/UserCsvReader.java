@@ -0,0 +1,92 @@
+package org.strelnikova.user.service.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads CSV records one at a time, in the dialect written by the CSV export: comma separated,
+ * fields quoted with {@code "} when they contain a comma, quote or line break, quotes doubled.
+ * Only the current record is held in memory, and a field longer than {@link #MAX_FIELD_LENGTH}
+ * aborts the read instead of growing it.
+ */
+class UserCsvReader implements Closeable {
+
+    static final int MAX_FIELD_LENGTH = 10_000;
+
+    private final Reader reader;
+    private long line = 1;
+    private long recordLine;
+
+    UserCsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Next record, or {@code null} at the end of input.
+     */
+    List<String> readRecord() throws IOException {
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+        recordLine = line;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IllegalArgumentException("Unterminated quoted field in record at line " + recordLine);
+                }
+                if (c == '"') {
+                    int next = reader.read();
+                    if (next != '"') {
+                        quoted = false;
+                        c = next;
+                        continue;
+                    }
+                } else if (c == '\n') {
+                    line++;
+                }
+                append(field, c);
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == -1) {
+                if (c == '\n') {
+                    line++;
+                }
+                fields.add(field.toString());
+                return fields;
+            } else if (c != '\r') {
+                append(field, c);
+            }
+            c = reader.read();
+        }
+    }
+
+    /**
+     * Line on which the last record returned by {@link #readRecord()} starts.
+     */
+    long getRecordLine() {
+        return recordLine;
+    }
+
+    private void append(StringBuilder field, int c) {
+        if (field.length() == MAX_FIELD_LENGTH) {
+            throw new IllegalArgumentException("Field longer than " + MAX_FIELD_LENGTH
+                    + " characters in record at line " + recordLine);
+        }
+        field.append((char) c);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
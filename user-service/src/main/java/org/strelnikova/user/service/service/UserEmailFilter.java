@@ -0,0 +1,176 @@
+package org.strelnikova.user.service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.strelnikova.user.service.repository.UserRepository;
+
+import java.util.Iterator;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+
+/**
+ * Bloom filter of all user emails in front of the uniqueness lookups: an email it has never seen is
+ * known to be free without a query. The unique constraint on {@code users.email} stays the source
+ * of truth. Emails written by other replicas arrive through the user events topic
+ * ({@code UserCacheInvalidationListener}), so the filter only misses an email in the short window
+ * before its event is relayed, and then the insert fails on the constraint instead of the lookup.
+ *
+ * <p>Built by a streaming scan once the application is ready and rebuilt on a schedule, which also
+ * drops the bits of deleted emails. Until the first build completes every email counts as possibly
+ * taken, i.e. the lookup always runs.
+ */
+@Slf4j
+@Component
+public class UserEmailFilter {
+
+    private final UserRepository userRepository;
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final Counter definitelyAbsent;
+    private final Counter possiblyPresent;
+    private final Counter falsePositives;
+
+    @Value("${app.users.email-filter.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.users.email-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    /** Room for growth until the next rebuild, as a multiple of the current user count. */
+    @Value("${app.users.email-filter.capacity-factor:2.0}")
+    private double capacityFactor;
+
+    private volatile EmailBloomFilter filter;
+    // Receives writes during a rebuild so that rows committed after the scan started are not lost
+    private volatile EmailBloomFilter building;
+    // Not synchronized: a virtual thread blocked in JDBC inside a monitor would pin its carrier
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+
+    public UserEmailFilter(UserRepository userRepository, PlatformTransactionManager transactionManager,
+                           MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+
+        Gauge.builder("users.email.filter.size", this, emailFilter -> emailFilter.metric(EmailBloomFilter::bitSize))
+                .description("Bits in the email Bloom filter")
+                .baseUnit("bits")
+                .register(meterRegistry);
+        Gauge.builder("users.email.filter.elements", this,
+                        emailFilter -> emailFilter.metric(EmailBloomFilter::approximateElementCount))
+                .description("Distinct emails in the email Bloom filter, estimated from its set bits")
+                .register(meterRegistry);
+        Gauge.builder("users.email.filter.expected.fpp", this,
+                        emailFilter -> emailFilter.metric(EmailBloomFilter::expectedFalsePositiveRate))
+                .description("Probability that the email Bloom filter reports a free email as possibly taken")
+                .register(meterRegistry);
+        this.definitelyAbsent = Counter.builder("users.email.filter.checks")
+                .tag("result", "absent")
+                .description("Email checks answered by the Bloom filter without a query")
+                .register(meterRegistry);
+        this.possiblyPresent = Counter.builder("users.email.filter.checks")
+                .tag("result", "possibly_present")
+                .description("Email checks that fell through to the database")
+                .register(meterRegistry);
+        this.falsePositives = Counter.builder("users.email.filter.false.positives")
+                .description("Email checks that fell through to the database and found the email free")
+                .register(meterRegistry);
+    }
+
+    /**
+     * {@code false} only if no user has {@code email}; {@code true} means the database must decide.
+     */
+    public boolean mightContain(String email) {
+        EmailBloomFilter current = filter;
+        if (current == null) {
+            return true;
+        }
+        boolean present = current.mightContain(email);
+        (present ? possiblyPresent : definitelyAbsent).increment();
+        return present;
+    }
+
+    /**
+     * Called after a possible hit was looked up and turned out to be free.
+     */
+    public void recordFalsePositive(int count) {
+        falsePositives.increment(count);
+    }
+
+    /**
+     * Adds an email being written; a rolled back write only leaves a false positive behind.
+     */
+    public void put(String email) {
+        if (email == null) {
+            return;
+        }
+        EmailBloomFilter current = filter;
+        if (current != null) {
+            current.put(email);
+        }
+        EmailBloomFilter next = building;
+        if (next != null) {
+            next.put(email);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (!enabled) {
+            log.info("Email Bloom filter is disabled, every email check queries the database");
+            return;
+        }
+        Thread loader = new Thread(this::rebuild, "user-email-filter-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    @Scheduled(initialDelayString = "${app.users.email-filter.rebuild-interval-ms:86400000}",
+            fixedDelayString = "${app.users.email-filter.rebuild-interval-ms:86400000}")
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        rebuildLock.lock();
+        try {
+            long users = userRepository.count();
+            EmailBloomFilter next = new EmailBloomFilter((long) Math.max(users * capacityFactor, 1024),
+                    falsePositiveRate);
+            building = next;
+            long scanned = readOnlyTransaction.execute(status -> {
+                long count = 0;
+                try (Stream<String> emails = userRepository.streamAllEmails()) {
+                    Iterator<String> iterator = emails.iterator();
+                    while (iterator.hasNext()) {
+                        next.put(iterator.next());
+                        count++;
+                    }
+                }
+                return count;
+            });
+            filter = next;
+            log.info("Email Bloom filter built from {} emails: {} bits, expected false positive rate {}",
+                    scanned, next.bitSize(), next.expectedFalsePositiveRate());
+        } catch (Exception e) {
+            log.error("Cannot build email Bloom filter, keeping the previous one", e);
+        } finally {
+            building = null;
+            rebuildLock.unlock();
+        }
+    }
+
+    private double metric(ToDoubleFunction<EmailBloomFilter> value) {
+        EmailBloomFilter current = filter;
+        return current == null ? 0 : value.applyAsDouble(current);
+    }
+}
@@ -0,0 +1,74 @@
+package org.strelnikova.user.service.service;
+
+import org.strelnikova.user.service.controller.dto.UserImportStatus;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mutable progress of one import, updated by its parser and writer threads and read by status requests.
+ */
+class UserImportJob {
+
+    private final UUID id = UUID.randomUUID();
+    private final String source;
+    private final int maxReportedFailures;
+    private final Instant startedAt = Instant.now();
+    private final AtomicLong linesRead = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final List<UserImportStatus.Failure> failures = new ArrayList<>();
+
+    private volatile UserImportStatus.State state = UserImportStatus.State.RUNNING;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    UserImportJob(String source, int maxReportedFailures) {
+        this.source = source;
+        this.maxReportedFailures = maxReportedFailures;
+    }
+
+    UUID getId() {
+        return id;
+    }
+
+    void recordRead() {
+        linesRead.incrementAndGet();
+    }
+
+    void recordCreated(int count) {
+        created.addAndGet(count);
+    }
+
+    void recordRejected(long line, String reason) {
+        rejected.incrementAndGet();
+        synchronized (failures) {
+            if (failures.size() < maxReportedFailures) {
+                failures.add(new UserImportStatus.Failure(line, reason));
+            }
+        }
+    }
+
+    void complete() {
+        finishedAt = Instant.now();
+        state = UserImportStatus.State.COMPLETED;
+    }
+
+    void fail(String reason) {
+        error = reason;
+        finishedAt = Instant.now();
+        state = UserImportStatus.State.FAILED;
+    }
+
+    UserImportStatus toStatus() {
+        List<UserImportStatus.Failure> reported;
+        synchronized (failures) {
+            reported = List.copyOf(failures);
+        }
+        return new UserImportStatus(id, source, state, linesRead.get(), created.get(), rejected.get(),
+                startedAt, finishedAt, error, reported);
+    }
+}
@@ -0,0 +1,280 @@
+package org.strelnikova.user.service.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.strelnikova.user.service.controller.dto.UserBatchItemResult;
+import org.strelnikova.user.service.controller.dto.UserImportStatus;
+import org.strelnikova.user.service.controller.dto.UserRequestDTO;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Imports users from CSV with constant memory. The calling thread parses records into chunks and
+ * hands them over a bounded queue to a writer thread, which creates each chunk through
+ * {@link UserService#createUsers} — one transaction with batched user and outbox inserts, validated
+ * by {@code UserValidator}. The queue bound makes a slow database throttle the parser.
+ * A chunk that hits the unique email constraint because of a concurrent insert is retried once, so
+ * its emails are checked again item by item instead of failing the whole import.
+ */
+@Slf4j
+@Service
+public class UserImportService {
+
+    private static final List<ImportRow> END_OF_INPUT = List.of();
+
+    private final UserService userService;
+    private final ExecutorService executor;
+    private final Cache<UUID, UserImportJob> jobs = Caffeine.newBuilder()
+            .maximumSize(100)
+            .expireAfterWrite(Duration.ofDays(1))
+            .build();
+
+    @Value("${app.users.import.chunk-size:500}")
+    private int chunkSize;
+
+    /** Must match the limit enforced by {@link UserService#createUsers}. */
+    @Value("${app.users.batch.max-size:1000}")
+    private int maxBatchSize;
+
+    @Value("${app.users.import.queue-capacity:4}")
+    private int queueCapacity;
+
+    @Value("${app.users.import.max-reported-failures:100}")
+    private int maxReportedFailures;
+
+    /** Server-side directory that file imports may read from; file imports are disabled when empty. */
+    @Value("${app.users.import.directory:}")
+    private String importDirectory;
+
+    public UserImportService(UserService userService) {
+        this.userService = userService;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "user-import-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Imports {@code csv} on the calling thread and returns the final status; progress can be
+     * polled meanwhile by the id of the returned status.
+     */
+    public UserImportStatus importCsv(InputStream csv) {
+        UserImportJob job = register("request body");
+        run(job, new InputStreamReader(csv, StandardCharsets.UTF_8));
+        return job.toStatus();
+    }
+
+    /**
+     * Starts importing {@code fileName} from the import directory in the background.
+     */
+    public UserImportStatus startFileImport(String fileName) {
+        Path file = resolveImportFile(fileName);
+        UserImportJob job = register(fileName);
+        executor.execute(() -> {
+            try {
+                run(job, Files.newBufferedReader(file, StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                log.error("Failed to open import file {}", file, e);
+                job.fail(e.getMessage());
+            }
+        });
+        return job.toStatus();
+    }
+
+    public Optional<UserImportStatus> getStatus(UUID id) {
+        return Optional.ofNullable(jobs.getIfPresent(id)).map(UserImportJob::toStatus);
+    }
+
+    /**
+     * Fails the startup instead of every import: a chunk larger than the batch limit would be
+     * rejected by {@link UserService#createUsers} as a whole.
+     */
+    @PostConstruct
+    void validateChunkSize() {
+        if (chunkSize < 1 || chunkSize > maxBatchSize) {
+            throw new IllegalStateException("app.users.import.chunk-size must be between 1 and "
+                    + "app.users.batch.max-size (" + maxBatchSize + "): " + chunkSize);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private UserImportJob register(String source) {
+        UserImportJob job = new UserImportJob(source, maxReportedFailures);
+        jobs.put(job.getId(), job);
+        log.info("Starting user import {} from {}", job.getId(), source);
+        return job;
+    }
+
+    private void run(UserImportJob job, Reader source) {
+        BlockingQueue<List<ImportRow>> chunks = new ArrayBlockingQueue<>(queueCapacity);
+        Future<?> writer = executor.submit(() -> {
+            writeChunks(job, chunks);
+            return null;
+        });
+        try (UserCsvReader csv = new UserCsvReader(new BufferedReader(source))) {
+            Columns columns = Columns.of(csv.readRecord());
+            List<ImportRow> chunk = new ArrayList<>(chunkSize);
+            List<String> record;
+            while ((record = csv.readRecord()) != null) {
+                if (record.size() == 1 && record.get(0).isBlank()) {
+                    continue;
+                }
+                job.recordRead();
+                try {
+                    chunk.add(new ImportRow(csv.getRecordLine(), columns.toRequest(record)));
+                } catch (IllegalArgumentException e) {
+                    job.recordRejected(csv.getRecordLine(), e.getMessage());
+                }
+                if (chunk.size() == chunkSize) {
+                    handOver(chunks, chunk, writer);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                handOver(chunks, chunk, writer);
+            }
+            handOver(chunks, END_OF_INPUT, writer);
+            writer.get();
+            job.complete();
+            log.info("User import {} completed: {}", job.getId(), job.toStatus());
+        } catch (ExecutionException e) {
+            log.error("User import {} failed while writing", job.getId(), e.getCause());
+            job.fail(e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.cancel(true);
+            job.fail("Interrupted");
+        } catch (IOException | RuntimeException e) {
+            log.error("User import {} failed while reading", job.getId(), e);
+            writer.cancel(true);
+            job.fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Blocks while the queue is full, but gives up when the writer has died so that the parser does
+     * not wait forever; {@code writer.get()} then rethrows the writer's failure.
+     */
+    private void handOver(BlockingQueue<List<ImportRow>> chunks, List<ImportRow> chunk, Future<?> writer)
+            throws InterruptedException, ExecutionException {
+        while (!chunks.offer(chunk, 1, TimeUnit.SECONDS)) {
+            if (writer.isDone()) {
+                writer.get();
+                throw new IllegalStateException("Import writer stopped unexpectedly");
+            }
+        }
+    }
+
+    private void writeChunks(UserImportJob job, BlockingQueue<List<ImportRow>> chunks) throws InterruptedException {
+        List<ImportRow> chunk;
+        while ((chunk = chunks.take()) != END_OF_INPUT) {
+            List<UserBatchItemResult> results = createChunk(job, chunk);
+            int created = 0;
+            for (UserBatchItemResult result : results) {
+                if (result.error() == null) {
+                    created++;
+                } else {
+                    job.recordRejected(chunk.get(result.index()).line(), result.error());
+                }
+            }
+            job.recordCreated(created);
+        }
+    }
+
+    /**
+     * The existing-email check and the insert are not atomic, so a user created concurrently with
+     * the same email rolls the chunk back on the unique constraint. The retry sees that user and
+     * rejects only its row; a second violation fails the import.
+     */
+    private List<UserBatchItemResult> createChunk(UserImportJob job, List<ImportRow> chunk) {
+        List<UserRequestDTO> requests = chunk.stream().map(ImportRow::request).toList();
+        try {
+            return userService.createUsers(requests);
+        } catch (DataIntegrityViolationException e) {
+            log.warn("User import {}: chunk from line {} hit a concurrent insert, retrying it",
+                    job.getId(), chunk.get(0).line());
+            return userService.createUsers(requests);
+        }
+    }
+
+    private Path resolveImportFile(String fileName) {
+        if (importDirectory.isBlank()) {
+            throw new IllegalArgumentException("File import is disabled, set app.users.import.directory");
+        }
+        Path directory = Path.of(importDirectory).toAbsolutePath().normalize();
+        Path file = directory.resolve(fileName).normalize();
+        if (!file.startsWith(directory) || !Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("No such import file: " + fileName);
+        }
+        return file;
+    }
+
+    private record ImportRow(long line, UserRequestDTO request) {
+    }
+
+    /**
+     * Positions of the imported columns, taken from the header so that the CSV export can be
+     * imported as is; other columns are ignored.
+     */
+    private record Columns(int name, int email, int age) {
+
+        static Columns of(List<String> header) {
+            if (header == null) {
+                throw new IllegalArgumentException("CSV is empty, expected a header with name, email and age");
+            }
+            List<String> names = header.stream().map(column -> column.strip().toLowerCase(Locale.ROOT)).toList();
+            if (!names.containsAll(List.of("name", "email", "age"))) {
+                throw new IllegalArgumentException("CSV header must contain name, email and age: " + header);
+            }
+            return new Columns(names.indexOf("name"), names.indexOf("email"), names.indexOf("age"));
+        }
+
+        UserRequestDTO toRequest(List<String> record) {
+            int required = Math.max(name, Math.max(email, age)) + 1;
+            if (record.size() < required) {
+                throw new IllegalArgumentException("Expected at least " + required + " fields, got " + record.size());
+            }
+            String ageField = record.get(age).strip();
+            Integer parsedAge;
+            try {
+                parsedAge = ageField.isEmpty() ? null : Integer.valueOf(ageField);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Age is not a number: " + ageField);
+            }
+            return new UserRequestDTO(record.get(name), record.get(email), parsedAge);
+        }
+    }
+}
@@ -1,20 +1,56 @@
 package org.strelnikova.user.service.service;
 
+import org.strelnikova.user.service.controller.dto.UserBatchItemResult;
+import org.strelnikova.user.service.controller.dto.UserPage;
 import org.strelnikova.user.service.controller.dto.UserRequestDTO;
 import org.strelnikova.user.service.controller.dto.UserResponseDTO;
+import org.strelnikova.user.service.controller.dto.UserSearchFilter;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.UUID;
 
 public interface UserService {
 
-    List<UserResponseDTO> getAllUsers();
+    /**
+     * Users ordered by creation time, starting after {@code cursor} (or from the beginning when it is
+     * {@code null}); {@code size} defaults to and is capped by the configured page sizes.
+     */
+    UserPage getUsers(String cursor, Integer size);
+
+    /**
+     * Like {@link #getUsers(String, Integer)}, restricted to the users matching {@code filter}.
+     */
+    UserPage searchUsers(UserSearchFilter filter, String cursor, Integer size);
+
+    /**
+     * Writes every user to {@code out} in the given format, one row at a time.
+     */
+    long exportUsers(UserExportFormat format, OutputStream out) throws IOException;
 
     UserResponseDTO getUserById(UUID id);
 
+    /**
+     * Current row version of the user, without loading it; backs the ETag of {@code /api/users/{id}}.
+     */
+    long getUserVersion(UUID id);
+
     UserResponseDTO createUser(UserRequestDTO requestDTO);
 
-    UserResponseDTO updateUser(UUID id, UserRequestDTO requestDTO);
+    /**
+     * Creates the valid entries of {@code requests} in one transaction with batched inserts; invalid
+     * entries and taken emails are reported per item instead of failing the whole batch.
+     */
+    List<UserBatchItemResult> createUsers(List<UserRequestDTO> requests);
+
+    /**
+     * Replaces the user's data. With {@code expectedVersion} (the version from {@code If-Match}) the
+     * update only applies while the user still has that version and otherwise fails with
+     * {@link org.springframework.orm.ObjectOptimisticLockingFailureException}; {@code null} overwrites
+     * unconditionally.
+     */
+    UserResponseDTO updateUser(UUID id, UserRequestDTO requestDTO, Long expectedVersion);
 
     void deleteUser(UUID id);
 
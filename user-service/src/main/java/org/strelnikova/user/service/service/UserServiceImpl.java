@@ -2,23 +2,47 @@ package org.strelnikova.user.service.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.strelnikova.user.service.config.CacheConfig;
 import org.strelnikova.user.service.controller.UserMapper;
+import org.strelnikova.user.service.controller.dto.UserBatchItemResult;
+import org.strelnikova.user.service.controller.dto.UserPage;
 import org.strelnikova.user.service.controller.dto.UserRequestDTO;
 import org.strelnikova.user.service.controller.dto.UserResponseDTO;
+import org.strelnikova.user.service.controller.dto.UserSearchFilter;
 import org.strelnikova.user.service.exception.UserNotFoundException;
+import org.strelnikova.user.service.exception.ValidationException;
 import org.strelnikova.user.service.model.User;
+import org.strelnikova.user.service.model.UserRow;
+import org.strelnikova.user.service.model.UserEvent;
 import org.strelnikova.user.service.model.UserEventType;
 import org.strelnikova.user.service.model.outbox.OutboxEvent;
-import org.strelnikova.user.service.model.outbox.dto.UserEventPayload;
 import org.strelnikova.user.service.repository.OutboxEventRepository;
 import org.strelnikova.user.service.repository.UserRepository;
 import org.strelnikova.user.service.validation.UserValidator;
 import tools.jackson.databind.ObjectMapper;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -31,19 +55,88 @@ public class UserServiceImpl implements UserService{
     private final UserValidator userValidator;
     private final OutboxEventRepository outboxEventRepository;
     private final ObjectMapper objectMapper;
+    private final UserEmailFilter userEmailFilter;
+
+    @Value("${app.users.page.default-size:20}")
+    private int defaultPageSize;
+
+    @Value("${app.users.page.max-size:100}")
+    private int maxPageSize;
+
+    @Value("${app.users.batch.max-size:1000}")
+    private int maxBatchSize;
 
     @Override
-    public List<UserResponseDTO> getAllUsers() {
-        log.info("Fetching all users");
-        return userMapper.usersToResponseDTOs(userRepository.findAll());
+    public UserPage getUsers(String cursor, Integer size) {
+        int pageSize = pageSize(size);
+        UserCursor after = cursor == null ? null : UserCursor.decode(cursor);
+        log.info("Fetching {} users after {}", pageSize, after);
+
+        // One extra row tells whether another page exists
+        List<UserResponseDTO> users = after == null
+                ? userRepository.findFirstPage(pageSize + 1)
+                : userRepository.findPageAfter(after.createdAt(), after.id(), pageSize + 1);
+        return toPage(users, pageSize);
     }
 
     @Override
+    public UserPage searchUsers(UserSearchFilter filter, String cursor, Integer size) {
+        int pageSize = pageSize(size);
+        UserCursor after = cursor == null ? null : UserCursor.decode(cursor);
+        log.info("Searching {} users by {} after {}", pageSize, filter, after);
+
+        List<UserResponseDTO> users = after == null
+                ? userRepository.search(filter, null, null, pageSize + 1)
+                : userRepository.search(filter, after.createdAt(), after.id(), pageSize + 1);
+        return toPage(users, pageSize);
+    }
+
+    @Override
+    public long exportUsers(UserExportFormat format, OutputStream out) throws IOException {
+        log.info("Exporting users as {}", format);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (format == UserExportFormat.CSV) {
+            writer.write("id,name,email,age,createdAt\n");
+        }
+
+        long exported = 0;
+        try (Stream<UserResponseDTO> users = userRepository.streamAllForExport()) {
+            Iterator<UserResponseDTO> iterator = users.iterator();
+            while (iterator.hasNext()) {
+                UserResponseDTO user = iterator.next();
+                writer.write(format == UserExportFormat.CSV ? toCsvLine(user) : objectMapper.writeValueAsString(user));
+                writer.write('\n');
+                exported++;
+            }
+        }
+        writer.flush();
+
+        log.info("Exported {} users", exported);
+        return exported;
+    }
+
+    /**
+     * Read-write, so that with a read replica it is served by the primary: a row read from a lagging
+     * replica right after an eviction would put the old version back into the cache.
+     */
+    @Override
+    @Transactional
+    @Cacheable(cacheNames = CacheConfig.USERS_CACHE, key = "#id")
     public UserResponseDTO getUserById(UUID id) {
         log.info("Fetching user with id: {}", id);
-        User user = userRepository.findById(id)
+        return userRepository.findDtoById(id)
+                .orElseThrow(() -> new UserNotFoundException(id));
+    }
+
+    /**
+     * Read from the primary like {@link #getUserById(UUID)}, so an ETag never goes back in time
+     * right after an update.
+     */
+    @Override
+    @Transactional
+    public long getUserVersion(UUID id) {
+        return userRepository.findVersionById(id)
                 .orElseThrow(() -> new UserNotFoundException(id));
-        return userMapper.userToResponseDTO(user);
     }
 
     @Override
@@ -52,68 +145,172 @@ public class UserServiceImpl implements UserService{
         log.info("Creating new user: {}", requestDTO);
         userValidator.validate(requestDTO);
 
-        checkEmailUnique(requestDTO.email(), null);
+        checkEmailUnique(requestDTO.email());
 
         User user = userMapper.requestDTOToUser(requestDTO);
         User savedUser = userRepository.save(user);
+        userEmailFilter.put(savedUser.getEmail());
         log.info("User created with id: {}", savedUser.getId());
 
-        saveOutboxEvent(savedUser, UserEventType.CREATED);
+        saveOutboxEvent(savedUser.getId(), savedUser.getName(), savedUser.getEmail(), UserEventType.CREATED);
         return userMapper.userToResponseDTO(savedUser);
     }
 
     @Override
     @Transactional
-    public UserResponseDTO updateUser(UUID id, UserRequestDTO requestDTO) {
-        log.info("Updating user with id: {}", id);
+    public List<UserBatchItemResult> createUsers(List<UserRequestDTO> requests) {
+        if (requests.size() > maxBatchSize) {
+            throw new IllegalArgumentException("Batch must not exceed " + maxBatchSize + " users: " + requests.size());
+        }
+        log.info("Creating batch of {} users", requests.size());
 
-        userValidator.validate(requestDTO);
+        UserBatchItemResult[] results = new UserBatchItemResult[requests.size()];
+        Map<Integer, UserRequestDTO> valid = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            try {
+                userValidator.validate(requests.get(i));
+                valid.put(i, requests.get(i));
+            } catch (ValidationException e) {
+                results[i] = UserBatchItemResult.rejected(i, e.getMessage());
+            }
+        }
 
-        User existingUser = userRepository.findById(id)
-                .orElseThrow(() -> new UserNotFoundException(id));
+        // One IN query over the unique index for the whole batch; not worth narrowing with the Bloom
+        // filter, whose misses would otherwise fail the batch on the constraint instead of one item
+        List<String> emails = valid.values().stream()
+                .map(UserRequestDTO::email)
+                .distinct()
+                .toList();
+        Set<String> takenEmails = new HashSet<>();
+        if (!emails.isEmpty()) {
+            takenEmails.addAll(userRepository.findExistingEmails(emails));
+        }
+        Map<Integer, User> users = new LinkedHashMap<>();
+        valid.forEach((index, request) -> {
+            // add() also rejects the second occurrence of an email within the batch
+            if (takenEmails.add(request.email())) {
+                users.put(index, userMapper.requestDTOToUser(request));
+                userEmailFilter.put(request.email());
+            } else {
+                results[index] = UserBatchItemResult.rejected(index, "Email already in use: " + request.email());
+            }
+        });
+
+        // Persist only queues the inserts; the flush sends them as JDBC batches (hibernate.jdbc.batch_size)
+        userRepository.saveAll(users.values());
+        outboxEventRepository.saveAll(users.values().stream()
+                .map(user -> toOutboxEvent(user.getId(), user.getName(), user.getEmail(), UserEventType.CREATED))
+                .toList());
+        userRepository.flush();
+
+        users.forEach((index, user) ->
+                results[index] = UserBatchItemResult.created(index, userMapper.userToResponseDTO(user)));
+        log.info("Created {} of {} users in batch", users.size(), requests.size());
+        return Arrays.asList(results);
+    }
 
-        checkEmailUnique(requestDTO.email(), existingUser.getEmail());
+    @Override
+    @Transactional
+    @CacheEvict(cacheNames = CacheConfig.USERS_CACHE, key = "#id")
+    public UserResponseDTO updateUser(UUID id, UserRequestDTO requestDTO, Long expectedVersion) {
+        log.info("Updating user with id: {}, expected version: {}", id, expectedVersion);
 
-        existingUser.setName(requestDTO.name());
-        existingUser.setEmail(requestDTO.email());
-        existingUser.setAge(requestDTO.age());
+        userValidator.validate(requestDTO);
 
-        User updatedUser = userRepository.save(existingUser);
+        // One round trip: a taken email fails on the unique constraint, mapped to 400 by GlobalExceptionHandler
+        UserRow updatedUser = userRepository
+                .updateReturning(id, requestDTO.name(), requestDTO.email(), requestDTO.age(), expectedVersion)
+                .orElseThrow(() -> updateMissed(id, expectedVersion));
+        userEmailFilter.put(updatedUser.getEmail());
         log.info("User updated: {}", updatedUser.getId());
-        saveOutboxEvent(updatedUser, UserEventType.UPDATED);
-        return userMapper.userToResponseDTO(updatedUser);
+        saveOutboxEvent(updatedUser.getId(), updatedUser.getName(), updatedUser.getEmail(), UserEventType.UPDATED);
+        return userMapper.rowToResponseDTO(updatedUser);
     }
 
     @Override
     @Transactional
+    @CacheEvict(cacheNames = CacheConfig.USERS_CACHE, key = "#id")
     public void deleteUser(UUID id) {
         log.info("Deleting user with id: {}", id);
-        User user = userRepository.findById(id)
+        UserRow user = userRepository.deleteReturning(id)
                 .orElseThrow(() -> new UserNotFoundException(id));
 
-        userRepository.deleteById(id);
-        saveOutboxEvent(user, UserEventType.DELETED);
+        saveOutboxEvent(user.getId(), user.getName(), user.getEmail(), UserEventType.DELETED);
         log.info("User deleted: {}", id);
     }
 
-    private void saveOutboxEvent(User user, UserEventType eventType) {
+    /**
+     * No row updated: either the user is gone or, with an expected version, someone else updated it first.
+     */
+    private RuntimeException updateMissed(UUID id, Long expectedVersion) {
+        if (expectedVersion != null && userRepository.findVersionById(id).isPresent()) {
+            return new ObjectOptimisticLockingFailureException(User.class, id);
+        }
+        return new UserNotFoundException(id);
+    }
+
+    private void saveOutboxEvent(UUID userId, String name, String email, UserEventType eventType) {
         try {
-            UserEventPayload payload = new UserEventPayload(user.getName(), user.getEmail());
-            String payloadJson = objectMapper.writeValueAsString(payload);  // строка
-            OutboxEvent event = new OutboxEvent(user.getId(), eventType.name(), payloadJson);
-            outboxEventRepository.save(event);
-            log.debug("Outbox event saved for user {} with type {}", user.getId(), eventType);
+            outboxEventRepository.save(toOutboxEvent(userId, name, email, eventType));
+            log.debug("Outbox event saved for user {} with type {}", userId, eventType);
         } catch (Exception e) {
-            log.error("Failed to save outbox event for user {}", user.getId(), e);
+            log.error("Failed to save outbox event for user {}", userId, e);
+        }
+    }
+
+    private OutboxEvent toOutboxEvent(UUID userId, String name, String email, UserEventType eventType) {
+        UserEvent userEvent = new UserEvent(name, email, eventType, Instant.now());
+        byte[] recordValue = objectMapper.writeValueAsBytes(userEvent);  // готовое значение Kafka-записи
+        return new OutboxEvent(userId, eventType.name(), userId.toString(), recordValue);
+    }
+
+    private static String toCsvLine(UserResponseDTO user) {
+        return String.join(",",
+                String.valueOf(user.id()),
+                csvField(user.name()),
+                csvField(user.email()),
+                user.age() == null ? "" : user.age().toString(),
+                String.valueOf(user.createdAt()));
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    private int pageSize(Integer size) {
+        int pageSize = size == null ? defaultPageSize : Math.min(size, maxPageSize);
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + size);
+        }
+        return pageSize;
+    }
+
+    /**
+     * Trims the extra look-ahead row and derives the next cursor from the last user kept.
+     */
+    private static UserPage toPage(List<UserResponseDTO> users, int pageSize) {
+        String nextCursor = null;
+        if (users.size() > pageSize) {
+            users = users.subList(0, pageSize);
+            UserResponseDTO last = users.get(pageSize - 1);
+            nextCursor = new UserCursor(last.createdAt(), last.id()).encode();
         }
+        return new UserPage(users, nextCursor);
     }
 
-    private void checkEmailUnique(String newEmail, String currentEmail) {
-        if (currentEmail != null && currentEmail.equals(newEmail)) {
+    private void checkEmailUnique(String newEmail) {
+        if (!userEmailFilter.mightContain(newEmail)) {
             return;
         }
         if (userRepository.existsByEmail(newEmail)) {
             throw new IllegalArgumentException("Email already in use: " + newEmail);
         }
+        userEmailFilter.recordFalsePositive(1);
     }
 }
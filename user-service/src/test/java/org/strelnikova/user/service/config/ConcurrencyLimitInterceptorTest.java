@@ -0,0 +1,41 @@
+package org.strelnikova.user.service.config;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.strelnikova.user.service.exception.ServiceOverloadedException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("Тестирование ConcurrencyLimitInterceptor. Проверяет ограничение одновременных запросов")
+class ConcurrencyLimitInterceptorTest {
+
+    private final ConcurrencyLimitInterceptor interceptor = new ConcurrencyLimitInterceptor(2, 10);
+    private final MockHttpServletRequest request = new MockHttpServletRequest();
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    @Test
+    @DisplayName("Запрос сверх лимита отклоняется после ожидания")
+    void shouldRejectRequestOverLimit() throws Exception {
+        assertThat(interceptor.preHandle(request, response, new Object())).isTrue();
+        assertThat(interceptor.preHandle(request, response, new Object())).isTrue();
+
+        assertThatThrownBy(() -> interceptor.preHandle(request, response, new Object()))
+                .isInstanceOf(ServiceOverloadedException.class);
+        assertThat(interceptor.inFlight()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Завершённый запрос освобождает место для следующего")
+    void shouldReleasePermitOnCompletion() throws Exception {
+        interceptor.preHandle(request, response, new Object());
+        interceptor.preHandle(request, response, new Object());
+
+        interceptor.afterCompletion(request, response, new Object(), null);
+
+        assertThat(interceptor.preHandle(request, response, new Object())).isTrue();
+        assertThat(interceptor.inFlight()).isEqualTo(2);
+    }
+}
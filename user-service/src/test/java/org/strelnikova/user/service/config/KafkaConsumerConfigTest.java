@@ -0,0 +1,31 @@
+package org.strelnikova.user.service.config;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Тестирование KafkaConsumerConfig. Проверяет чтение событий без коммита смещений")
+class KafkaConsumerConfigTest {
+
+    @Test
+    @DisplayName("Потребитель инвалидации кэша не коммитит смещения")
+    void shouldNeverCommitOffsets() {
+        KafkaConsumerConfig config = new KafkaConsumerConfig();
+        ReflectionTestUtils.setField(config, "bootstrapServers", "localhost:9092");
+
+        ConsumerFactory<String, byte[]> consumerFactory = config.cacheInvalidationConsumerFactory();
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = config.cacheInvalidationListenerContainerFactory();
+
+        assertThat(consumerFactory.getConfigurationProperties())
+                .containsEntry(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        assertThat(factory.getContainerProperties().getAckMode()).isEqualTo(ContainerProperties.AckMode.MANUAL);
+        assertThat(factory.getContainerProperties().getAssignmentCommitOption())
+                .isEqualTo(ContainerProperties.AssignmentCommitOption.NEVER);
+    }
+}
@@ -0,0 +1,54 @@
+package org.strelnikova.user.service.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("Тестирование KafkaProducerConfig. Проверяет условия транзакционного режима")
+class KafkaProducerConfigTest {
+
+    @Test
+    @DisplayName("Транзакционный режим без шардирования outbox не запускается")
+    void shouldRejectTransactionalModeWithoutSharding() {
+        KafkaProducerConfig config = config(true, false);
+
+        assertThatThrownBy(config::producerFactory)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("app.outbox.sharding.enabled");
+    }
+
+    @Test
+    @DisplayName("Транзакционный режим с шардированием получает префикс transactional.id")
+    void shouldCreateTransactionalFactoryWithSharding() {
+        DefaultKafkaProducerFactory<String, byte[]> factory =
+                (DefaultKafkaProducerFactory<String, byte[]>) config(true, true).producerFactory();
+
+        assertThat(factory.getTransactionIdPrefix()).isEqualTo("user-service-outbox-");
+    }
+
+    @Test
+    @DisplayName("Нетранзакционный режим не зависит от шардирования")
+    void shouldCreatePlainFactoryWithoutSharding() {
+        DefaultKafkaProducerFactory<String, byte[]> factory =
+                (DefaultKafkaProducerFactory<String, byte[]>) config(false, false).producerFactory();
+
+        assertThat(factory.transactionCapable()).isFalse();
+    }
+
+    private static KafkaProducerConfig config(boolean transactional, boolean shardingEnabled) {
+        KafkaProducerConfig config = new KafkaProducerConfig(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(config, "bootstrapServers", "localhost:9092");
+        ReflectionTestUtils.setField(config, "lingerMs", 10);
+        ReflectionTestUtils.setField(config, "batchSize", 65536);
+        ReflectionTestUtils.setField(config, "compressionType", "lz4");
+        ReflectionTestUtils.setField(config, "transactional", transactional);
+        ReflectionTestUtils.setField(config, "transactionIdPrefix", "user-service-outbox");
+        ReflectionTestUtils.setField(config, "shardingEnabled", shardingEnabled);
+        return config;
+    }
+}
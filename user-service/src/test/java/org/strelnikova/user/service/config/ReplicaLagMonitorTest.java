@@ -0,0 +1,63 @@
+package org.strelnikova.user.service.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DisplayName("Тестирование ReplicaLagMonitor. Проверяет решение о чтении с реплики")
+class ReplicaLagMonitorTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final ReplicaLagMonitor monitor = new ReplicaLagMonitor(jdbcTemplate, 5000, new SimpleMeterRegistry());
+
+    @Test
+    @DisplayName("Реплика с отставанием в пределах лимита используется")
+    void shouldUseReplicaWithinLagLimit() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Double.class))).thenReturn(120.0);
+
+        monitor.checkLag();
+
+        assertThat(monitor.isReplicaUsable()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Реплика с отставанием сверх лимита не используется")
+    void shouldNotUseLaggingReplica() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Double.class))).thenReturn(120.0, 7000.0);
+
+        monitor.checkLag();
+        monitor.checkLag();
+
+        assertThat(monitor.isReplicaUsable()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Реплика, переставшая получать WAL, не используется")
+    void shouldNotUseReplicaThatStoppedStreaming() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Double.class))).thenReturn(0.0, (Double) null);
+
+        monitor.checkLag();
+        monitor.checkLag();
+
+        assertThat(monitor.isReplicaUsable()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Недоступная реплика не используется")
+    void shouldNotUseUnreachableReplica() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Double.class)))
+                .thenThrow(new DataAccessResourceFailureException("connection refused"));
+
+        monitor.checkLag();
+
+        assertThat(monitor.isReplicaUsable()).isFalse();
+    }
+}
@@ -0,0 +1,49 @@
+package org.strelnikova.user.service.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.strelnikova.user.service.config.ReplicaRoutingDataSource.Target;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DisplayName("Тестирование ReplicaRoutingDataSource. Проверяет выбор пула для транзакции")
+class ReplicaRoutingDataSourceTest {
+
+    private final ReplicaLagMonitor lagMonitor = mock(ReplicaLagMonitor.class);
+    private final ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(lagMonitor);
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    @Test
+    @DisplayName("Read-only транзакция уходит на реплику, пока та не отстаёт")
+    void shouldRouteReadOnlyTransactionToReplica() {
+        when(lagMonitor.isReplicaUsable()).thenReturn(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertThat(dataSource.determineCurrentLookupKey()).isEqualTo(Target.REPLICA);
+    }
+
+    @Test
+    @DisplayName("Read-only транзакция уходит на primary, если реплика отстаёт или недоступна")
+    void shouldFallBackToPrimaryWhenReplicaLags() {
+        when(lagMonitor.isReplicaUsable()).thenReturn(false);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertThat(dataSource.determineCurrentLookupKey()).isEqualTo(Target.PRIMARY);
+    }
+
+    @Test
+    @DisplayName("Пишущая транзакция всегда уходит на primary")
+    void shouldRouteWritesToPrimary() {
+        when(lagMonitor.isReplicaUsable()).thenReturn(true);
+
+        assertThat(dataSource.determineCurrentLookupKey()).isEqualTo(Target.PRIMARY);
+    }
+}
@@ -0,0 +1,130 @@
+package org.strelnikova.user.service.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.strelnikova.user.service.config.CacheConfig;
+import org.strelnikova.user.service.model.UserEvent;
+import org.strelnikova.user.service.model.UserEventType;
+import org.strelnikova.user.service.service.UserEmailFilter;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Тестирование UserCacheInvalidationListener. Проверяет сброс кэша и пополнение фильтра email по событиям")
+class UserCacheInvalidationListenerTest {
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().build();
+
+    @Mock
+    private CacheManager cacheManager;
+
+    @Mock
+    private Cache usersCache;
+
+    @Mock
+    private UserEmailFilter userEmailFilter;
+
+    private UserCacheInvalidationListener listener;
+
+    @BeforeEach
+    void setUp() {
+        listener = new UserCacheInvalidationListener(cacheManager, userEmailFilter, objectMapper, true);
+    }
+
+    @Test
+    @DisplayName("Событие пользователя удаляет его запись из кэша")
+    void shouldEvictUserByKey() {
+        UUID userId = UUID.randomUUID();
+        when(cacheManager.getCache(CacheConfig.USERS_CACHE)).thenReturn(usersCache);
+
+        listener.onUserEvent(record(userId.toString(), event(UserEventType.UPDATED)));
+
+        verify(usersCache).evict(userId);
+    }
+
+    @Test
+    @DisplayName("Email созданного на другой реплике пользователя попадает в фильтр")
+    void shouldPutEmailOfCreatedUser() {
+        when(cacheManager.getCache(CacheConfig.USERS_CACHE)).thenReturn(usersCache);
+
+        listener.onUserEvent(record(UUID.randomUUID().toString(), event(UserEventType.CREATED)));
+
+        verify(userEmailFilter).put("ivan@example.com");
+    }
+
+    @Test
+    @DisplayName("Email удалённого пользователя в фильтр не добавляется")
+    void shouldNotPutEmailOfDeletedUser() {
+        when(cacheManager.getCache(CacheConfig.USERS_CACHE)).thenReturn(usersCache);
+
+        listener.onUserEvent(record(UUID.randomUUID().toString(), event(UserEventType.DELETED)));
+
+        verify(userEmailFilter, never()).put(any());
+    }
+
+    @Test
+    @DisplayName("Без сброса кэша события только пополняют фильтр")
+    void shouldOnlyPutEmailWhenEvictionDisabled() {
+        listener = new UserCacheInvalidationListener(cacheManager, userEmailFilter, objectMapper, false);
+
+        listener.onUserEvent(record(UUID.randomUUID().toString(), event(UserEventType.UPDATED)));
+
+        verifyNoInteractions(cacheManager);
+        verify(userEmailFilter).put("ivan@example.com");
+    }
+
+    @Test
+    @DisplayName("Нечитаемое значение события не мешает сбросу кэша")
+    void shouldEvictEvenWhenValueIsUnreadable() {
+        UUID userId = UUID.randomUUID();
+        when(cacheManager.getCache(CacheConfig.USERS_CACHE)).thenReturn(usersCache);
+
+        listener.onUserEvent(record(userId.toString(), new byte[]{1, 2, 3}));
+
+        verify(usersCache).evict(userId);
+        verifyNoInteractions(userEmailFilter);
+    }
+
+    @Test
+    @DisplayName("Событие с некорректным ключом пропускается")
+    void shouldSkipRecordWithInvalidKey() {
+        listener.onUserEvent(record("not-a-uuid", new byte[0]));
+
+        verifyNoInteractions(cacheManager, userEmailFilter);
+    }
+
+    @Test
+    @DisplayName("Каждая реплика подписывается на топик в собственной группе")
+    void shouldSubscribeInPerInstanceGroup() throws NoSuchMethodException {
+        KafkaListener kafkaListener = UserCacheInvalidationListener.class
+                .getMethod("onUserEvent", ConsumerRecord.class)
+                .getAnnotation(KafkaListener.class);
+
+        assertThat(kafkaListener.topics()).containsExactly("${app.kafka.topic.user-events}");
+        assertThat(kafkaListener.topicPartitions()).isEmpty();
+        assertThat(kafkaListener.groupId()).isEqualTo("${spring.application.name}-cache-${HOSTNAME:${random.uuid}}");
+    }
+
+    private byte[] event(UserEventType type) {
+        return objectMapper.writeValueAsBytes(new UserEvent("Ivan", "ivan@example.com", type, Instant.now()));
+    }
+
+    private static ConsumerRecord<String, byte[]> record(String key, byte[] value) {
+        return new ConsumerRecord<>("user-service-topic", 0, 0L, key, value);
+    }
+}
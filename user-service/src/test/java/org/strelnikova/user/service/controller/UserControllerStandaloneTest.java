@@ -0,0 +1,159 @@
+package org.strelnikova.user.service.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.Link;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.strelnikova.user.service.controller.dto.UserPage;
+import org.strelnikova.user.service.controller.dto.UserResponseDTO;
+import org.strelnikova.user.service.exception.GlobalExceptionHandler;
+import org.strelnikova.user.service.service.UserService;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Conditional requests and HAL links against the controller alone: no Spring context, the service
+ * is a mock.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Тестирование UserController. Проверяет ETag, условные запросы и ссылки")
+class UserControllerStandaloneTest {
+
+    @Mock
+    private UserService userService;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(new UserController(userService))
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+    }
+
+    @Test
+    @DisplayName("GET /api/users/{id} отдаёт версию в ETag, но не в теле")
+    void shouldReturnUserVersionAsETag() throws Exception {
+        UUID id = UUID.randomUUID();
+        when(userService.getUserById(id)).thenReturn(user(id, 2L));
+
+        mockMvc.perform(get("/api/users/{id}", id))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"2\""))
+                .andExpect(jsonPath("$.name").value("John"))
+                .andExpect(jsonPath("$.version").doesNotExist());
+
+        verify(userService, never()).getUserVersion(id);
+    }
+
+    @Test
+    @DisplayName("GET /api/users/{id} с совпавшим If-None-Match отвечает 304, не загружая пользователя")
+    void shouldReturnNotModifiedWhenUserETagMatches() throws Exception {
+        UUID id = UUID.randomUUID();
+        when(userService.getUserVersion(id)).thenReturn(2L);
+
+        mockMvc.perform(get("/api/users/{id}", id).header("If-None-Match", "\"2\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        verify(userService, never()).getUserById(id);
+    }
+
+    @Test
+    @DisplayName("GET /api/users/{id} с устаревшим If-None-Match отдаёт пользователя заново")
+    void shouldReturnUserWhenETagIsStale() throws Exception {
+        UUID id = UUID.randomUUID();
+        when(userService.getUserVersion(id)).thenReturn(3L);
+        when(userService.getUserById(id)).thenReturn(user(id, 3L));
+
+        mockMvc.perform(get("/api/users/{id}", id).header("If-None-Match", "\"2\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"3\""));
+    }
+
+    @Test
+    @DisplayName("GET /api/users отдаёт ETag страницы и 304 на повторный запрос с ним")
+    void shouldReturnNotModifiedWhenPageETagMatches() throws Exception {
+        UserPage page = new UserPage(List.of(user(UUID.randomUUID(), 0L), user(UUID.randomUUID(), 1L)), null);
+        when(userService.getUsers(null, null)).thenReturn(page);
+
+        String eTag = mockMvc.perform(get("/api/users"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/api/users").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    @DisplayName("ETag страницы меняется, когда меняется версия пользователя на ней")
+    void shouldChangePageETagWhenUserVersionChanges() throws Exception {
+        UUID id = UUID.randomUUID();
+        when(userService.getUsers(null, null))
+                .thenReturn(new UserPage(List.of(user(id, 0L)), null))
+                .thenReturn(new UserPage(List.of(user(id, 1L)), null));
+
+        String before = mockMvc.perform(get("/api/users")).andReturn().getResponse().getHeader("ETag");
+        String after = mockMvc.perform(get("/api/users").header("If-None-Match", before))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        assertThat(after).isNotEqualTo(before);
+    }
+
+    @Test
+    @DisplayName("Ссылки пользователей совпадают с построенными через methodOn")
+    void shouldBuildItemLinksLikeMethodOn() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        when(userService.getUsers(null, null))
+                .thenReturn(new UserPage(List.of(user(first, 0L), user(second, 0L)), null));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/users");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        try {
+            UserController controller = new UserController(userService);
+            List<EntityModel<UserResponseDTO>> users = List.copyOf(
+                    controller.getAllUsers(null, null, new ServletWebRequest(request)).getBody().getContent());
+
+            Link expectedUsers = linkTo(methodOn(UserController.class).getAllUsers(null, null, null)).withRel("users");
+            assertThat(expectedUsers.isTemplated()).isTrue();
+            assertThat(users).hasSize(2);
+            for (EntityModel<UserResponseDTO> user : users) {
+                UUID id = user.getContent().id();
+                assertThat(user.getRequiredLink(IanaLinkRelations.SELF).getHref())
+                        .isEqualTo("http://localhost/api/users/" + id)
+                        .isEqualTo(linkTo(methodOn(UserController.class).getUser(id, null)).withSelfRel().getHref());
+                assertThat(user.getRequiredLink("users")).isEqualTo(expectedUsers);
+                assertThat(user.getRequiredLink("users").getHref()).isEqualTo("http://localhost/api/users{?cursor,size}");
+            }
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    private static UserResponseDTO user(UUID id, long version) {
+        return new UserResponseDTO(id, "John", "john@example.com", 30, OffsetDateTime.now(), version);
+    }
+}
@@ -11,6 +11,7 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 import org.strelnikova.user.service.controller.UserController;
+import org.strelnikova.user.service.controller.dto.UserPage;
 import org.strelnikova.user.service.controller.dto.UserRequestDTO;
 import org.strelnikova.user.service.controller.dto.UserResponseDTO;
 import org.strelnikova.user.service.exception.UserNotFoundException;
@@ -45,11 +46,11 @@ class UserControllerUnitTest {
     @DisplayName("GET /api/users - should return list of users")
     void getAllUsers() throws Exception {
         UserResponseDTO user1 = new UserResponseDTO(
-                UUID.randomUUID(), "John", "john@example.com", 30, OffsetDateTime.now());
+                UUID.randomUUID(), "John", "john@example.com", 30, OffsetDateTime.now(), 0L);
         UserResponseDTO user2 = new UserResponseDTO(
-                UUID.randomUUID(), "Jane", "jane@example.com", 25, OffsetDateTime.now());
+                UUID.randomUUID(), "Jane", "jane@example.com", 25, OffsetDateTime.now(), 0L);
 
-        when(userService.getAllUsers()).thenReturn(List.of(user1, user2));
+        when(userService.getUsers(null, null)).thenReturn(new UserPage(List.of(user1, user2), null));
 
         mockMvc.perform(get("/api/users"))
                 .andExpect(status().isOk())
@@ -58,9 +59,13 @@ class UserControllerUnitTest {
                 .andExpect(jsonPath("$._embedded.userResponseDTOList.length()").value(2))
                 .andExpect(jsonPath("$._embedded.userResponseDTOList[0].name").value("John"))
                 .andExpect(jsonPath("$._embedded.userResponseDTOList[1].name").value("Jane"))
+                .andExpect(jsonPath("$._embedded.userResponseDTOList[0]._links.self.href")
+                        .value("http://localhost/api/users/" + user1.id()))
+                .andExpect(jsonPath("$._embedded.userResponseDTOList[0]._links.users.href")
+                        .value("http://localhost/api/users"))
                 .andExpect(jsonPath("$._links.self.href").exists());
 
-        verify(userService, times(1)).getAllUsers();
+        verify(userService, times(1)).getUsers(null, null);
     }
 
     @Test
@@ -69,7 +74,7 @@ class UserControllerUnitTest {
 
         UUID id = UUID.randomUUID();
         UserResponseDTO user = new UserResponseDTO(
-                id, "John", "john@example.com", 30, OffsetDateTime.now());
+                id, "John", "john@example.com", 30, OffsetDateTime.now(), 0L);
 
         when(userService.getUserById(id)).thenReturn(user);
 
@@ -101,7 +106,7 @@ class UserControllerUnitTest {
         UserRequestDTO request = new UserRequestDTO("New User", "new@example.com", 28);
         UUID generatedId = UUID.randomUUID();
         UserResponseDTO response = new UserResponseDTO(
-                generatedId, "New User", "new@example.com", 28, OffsetDateTime.now());
+                generatedId, "New User", "new@example.com", 28, OffsetDateTime.now(), 0L);
 
         when(userService.createUser(any(UserRequestDTO.class))).thenReturn(response);
 
@@ -123,9 +128,9 @@ class UserControllerUnitTest {
         UUID id = UUID.randomUUID();
         UserRequestDTO request = new UserRequestDTO("Updated", "updated@example.com", 30);
         UserResponseDTO response = new UserResponseDTO(
-                id, "Updated", "updated@example.com", 30, OffsetDateTime.now());
+                id, "Updated", "updated@example.com", 30, OffsetDateTime.now(), 0L);
 
-        when(userService.updateUser(eq(id), any(UserRequestDTO.class))).thenReturn(response);
+        when(userService.updateUser(eq(id), any(UserRequestDTO.class), isNull())).thenReturn(response);
 
         mockMvc.perform(put("/api/users/{id}", id)
                         .contentType(MediaType.APPLICATION_JSON)
@@ -133,7 +138,7 @@ class UserControllerUnitTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.name", is("Updated")));
 
-        verify(userService, times(1)).updateUser(eq(id), any(UserRequestDTO.class));
+        verify(userService, times(1)).updateUser(eq(id), any(UserRequestDTO.class), isNull());
     }
 
     @Test
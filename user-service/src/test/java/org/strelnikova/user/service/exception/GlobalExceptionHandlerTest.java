@@ -0,0 +1,72 @@
+package org.strelnikova.user.service.exception;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.strelnikova.user.service.exception.GlobalExceptionHandler.ErrorResponse;
+import org.strelnikova.user.service.model.User;
+
+import java.sql.SQLException;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Тестирование GlobalExceptionHandler. Проверяет перевод ошибок БД в HTTP-ответы")
+class GlobalExceptionHandlerTest {
+
+    private final GlobalExceptionHandler handler = new GlobalExceptionHandler();
+
+    @Test
+    @DisplayName("Нарушение уникальности email превращается в 400 Email already in use")
+    void shouldMapEmailUniqueViolationToBadRequest() {
+        ResponseEntity<ErrorResponse> response = handler.handleDataIntegrityViolation(violation("users_email_key"));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(response.getBody().message()).isEqualTo("Email already in use");
+    }
+
+    @Test
+    @DisplayName("Имя ограничения сравнивается без учёта регистра")
+    void shouldMatchEmailConstraintIgnoringCase() {
+        ResponseEntity<ErrorResponse> response = handler.handleDataIntegrityViolation(violation("UK_USERS_EMAIL"));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    @DisplayName("Другие нарушения ограничений превращаются в 409")
+    void shouldMapOtherConstraintViolationToConflict() {
+        ResponseEntity<ErrorResponse> response = handler.handleDataIntegrityViolation(violation("outbox_pkey"));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+        assertThat(response.getBody().message()).isEqualTo("The request conflicts with existing data");
+    }
+
+    @Test
+    @DisplayName("Нарушение без имени ограничения превращается в 409")
+    void shouldMapViolationWithoutConstraintToConflict() {
+        ResponseEntity<ErrorResponse> response = handler.handleDataIntegrityViolation(
+                new DataIntegrityViolationException("duplicate key value violates unique constraint"));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+    }
+
+    @Test
+    @DisplayName("Устаревшая версия пользователя превращается в 409")
+    void shouldMapOptimisticLockingFailureToConflict() {
+        ResponseEntity<ErrorResponse> response = handler.handleOptimisticLockingFailure(
+                new ObjectOptimisticLockingFailureException(User.class, UUID.randomUUID()));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+    }
+
+    private static DataIntegrityViolationException violation(String constraintName) {
+        ConstraintViolationException cause = new ConstraintViolationException(
+                "could not execute statement", new SQLException("duplicate key value", "23505"), constraintName);
+        return new DataIntegrityViolationException("could not execute statement", cause);
+    }
+}
@@ -0,0 +1,80 @@
+package org.strelnikova.user.service.repository;
+
+import liquibase.integration.spring.SpringLiquibase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Plans of the email prefix predicate on the schema from the Liquibase changelog, executed more often
+ * than pgjdbc's {@code prepareThreshold} so that PostgreSQL has had the chance to switch to a generic plan.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@DisplayName("Тестирование плана поиска пользователей. Проверяет индекс по префиксу email")
+class UserSearchPlanTest {
+
+    private static final int EXECUTIONS = 10;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17-alpine");
+
+    private static SingleConnectionDataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        dataSource = new SingleConnectionDataSource(postgres.getJdbcUrl(), postgres.getUsername(),
+                postgres.getPassword(), true);
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(dataSource);
+        liquibase.setChangeLog("classpath:db/changelog/db.changelog-master.xml");
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("""
+                INSERT INTO users (id, name, email, age, created_at)
+                SELECT gen_random_uuid(), 'User ' || g, 'user' || lpad(g::text, 6, '0') || '@example.com',
+                       18 + g % 60, now() - g * interval '1 second'
+                FROM generate_series(1, 50000) g
+                """);
+        jdbcTemplate.execute("ANALYZE users");
+    }
+
+    @AfterAll
+    static void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Test
+    @DisplayName("Связанный префикс использует диапазон по idx_users_email_lower после многих выполнений")
+    void shouldKeepEmailIndexRangeForBoundPrefix() {
+        String pattern = UserSearchRepositoryImpl.emailPrefixPattern("USER000042@");
+        jdbcTemplate.execute("""
+                PREPARE search(text, int) AS
+                SELECT id FROM users
+                WHERE lower(email) LIKE $1 ESCAPE '!'
+                ORDER BY created_at, id LIMIT $2
+                """);
+        try {
+            String plan = "";
+            for (int i = 0; i < EXECUTIONS; i++) {
+                plan = String.join("\n", jdbcTemplate.queryForList(
+                        "EXPLAIN EXECUTE search('" + pattern + "', 21)", String.class));
+            }
+
+            assertThat(plan).contains("idx_users_email_lower").contains("~>=~ 'user000042@'");
+        } finally {
+            jdbcTemplate.execute("DEALLOCATE search");
+        }
+    }
+}
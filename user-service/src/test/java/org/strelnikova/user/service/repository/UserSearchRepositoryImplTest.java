@@ -0,0 +1,59 @@
+package org.strelnikova.user.service.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.strelnikova.user.service.controller.dto.UserSearchFilter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("User Search Query Tests")
+class UserSearchRepositoryImplTest {
+
+    @Test
+    @DisplayName("Should filter on the indexed expressions only for given filters")
+    void shouldBuildPredicatesForGivenFilters() {
+        String hql = UserSearchRepositoryImpl.buildQuery(new UserSearchFilter("ivan@", "iva", 18, null), true);
+
+        assertThat(hql)
+                .contains("lower(u.email) LIKE :emailPrefix ESCAPE '!'")
+                .contains("lower(u.name) LIKE :name")
+                .contains("u.age >= :minAge")
+                .doesNotContain(":maxAge")
+                .doesNotContain("IS NULL")
+                .contains("(u.createdAt, u.id) > (:createdAt, :id)")
+                .endsWith("ORDER BY u.createdAt, u.id");
+    }
+
+    @Test
+    @DisplayName("Should fall back to plain keyset order without filters")
+    void shouldBuildUnfilteredQuery() {
+        String hql = UserSearchRepositoryImpl.buildQuery(new UserSearchFilter(" ", null, null, null), false);
+
+        // u.age is always selected by the projection, so only the WHERE clause is checked
+        String where = hql.substring(hql.indexOf("WHERE"), hql.indexOf("ORDER BY"));
+        assertThat(where.strip()).isEqualTo("WHERE 1 = 1");
+    }
+
+    @Test
+    @DisplayName("Should bind the email prefix instead of writing user input into the query")
+    void shouldBindEmailPrefix() {
+        String hql = UserSearchRepositoryImpl.buildQuery(new UserSearchFilter("o'neil", null, null, null), false);
+
+        assertThat(hql).contains("lower(u.email) LIKE :emailPrefix ESCAPE '!'").doesNotContain("neil");
+        assertThat(UserSearchRepositoryImpl.emailPrefixPattern("O_Neil")).isEqualTo("o!_neil%");
+    }
+
+    @Test
+    @DisplayName("Should escape LIKE wildcards in user input")
+    void shouldEscapeWildcards() {
+        assertThat(UserSearchRepositoryImpl.escapeLike("a_b%c!d")).isEqualTo("a!_b!%c!!d");
+    }
+
+    @Test
+    @DisplayName("Should reject inverted age range")
+    void shouldRejectInvertedAgeRange() {
+        assertThatThrownBy(() -> new UserSearchFilter(null, null, 40, 30))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
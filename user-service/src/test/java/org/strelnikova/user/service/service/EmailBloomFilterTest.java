@@ -0,0 +1,37 @@
+package org.strelnikova.user.service.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@DisplayName("Email Bloom Filter Tests")
+class EmailBloomFilterTest {
+
+    @Test
+    @DisplayName("Should never report an added email as absent")
+    void shouldHaveNoFalseNegatives() {
+        EmailBloomFilter filter = new EmailBloomFilter(10_000, 0.01);
+        IntStream.range(0, 10_000).forEach(i -> filter.put("user" + i + "@gmail.com"));
+
+        assertThat(IntStream.range(0, 10_000).allMatch(i -> filter.mightContain("user" + i + "@gmail.com"))).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should keep false positives near the configured rate at capacity")
+    void shouldKeepFalsePositiveRate() {
+        EmailBloomFilter filter = new EmailBloomFilter(10_000, 0.01);
+        IntStream.range(0, 10_000).forEach(i -> filter.put("user" + i + "@gmail.com"));
+
+        long falsePositives = IntStream.range(0, 100_000)
+                .filter(i -> filter.mightContain("other" + i + "@mail.ru"))
+                .count();
+
+        assertThat(falsePositives / 100_000.0).isLessThan(0.02);
+        assertThat(filter.expectedFalsePositiveRate()).isCloseTo(0.01, within(0.005));
+        assertThat(filter.approximateElementCount()).isCloseTo(10_000, within(300.0));
+    }
+}
@@ -3,25 +3,26 @@ package org.strelnikova.user.service.service;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.test.util.ReflectionTestUtils;
-import org.strelnikova.user.service.model.UserEvent;
-import org.strelnikova.user.service.model.UserEventType;
 import org.strelnikova.user.service.service.KafkaUserService;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -30,80 +31,124 @@ import static org.mockito.Mockito.*;
 class KafkaUserServiceTest {
 
     @Mock
-    private KafkaTemplate<String, UserEvent> kafkaTemplate;
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
 
-    @InjectMocks
     private KafkaUserService kafkaUserService;
 
     private final String testTopic = "test-topic";
-    private final String userName = "testUser";
-    private final String email = "test@example.com";
-    private final UserEventType eventType = UserEventType.CREATED;
+    private final String key = UUID.randomUUID().toString();
+    private final byte[] value = "{\"userName\":\"testUser\"}".getBytes(StandardCharsets.UTF_8);
+    private final List<Header> headers =
+            List.of(new RecordHeader("event-type", "CREATED".getBytes(StandardCharsets.UTF_8)));
 
     @BeforeEach
     void setUp() {
+        kafkaUserService = new KafkaUserService(kafkaTemplate, 1);
         ReflectionTestUtils.setField(kafkaUserService, "userEventsTopic", testTopic);
+        ReflectionTestUtils.setField(kafkaUserService, "sendTimeoutMs", 200L);
     }
 
     @Test
     @DisplayName("Событие UserEvent должно успешно отсылаться.")
-    void shouldSendEventSuccessfully() throws Exception {
+    void shouldSendEventSuccessfully() {
 
-        CompletableFuture<SendResult<String, UserEvent>> future = new CompletableFuture<>();
-        ProducerRecord<String, UserEvent> producerRecord = new ProducerRecord<>(testTopic, userName, null);
+        CompletableFuture<SendResult<String, byte[]>> future = new CompletableFuture<>();
+        ProducerRecord<String, byte[]> producerRecord = new ProducerRecord<>(testTopic, key, value);
         RecordMetadata metadata = new RecordMetadata(
                 new TopicPartition(testTopic, 0),
                 0L, 0, 0L, 0, 0
         );
-        SendResult<String, UserEvent> sendResult = new SendResult<>(producerRecord, metadata);
+        SendResult<String, byte[]> sendResult = new SendResult<>(producerRecord, metadata);
         future.complete(sendResult);
 
-        when(kafkaTemplate.send(eq(testTopic), eq(userName), any(UserEvent.class)))
+        when(kafkaTemplate.send(anyRecord()))
                 .thenReturn(future);
 
 
-        kafkaUserService.sendUserEvent(userName, email, eventType);
+        CompletableFuture<SendResult<String, byte[]>> result =
+                kafkaUserService.sendUserEventAsync(key, value, headers);
 
-        ArgumentCaptor<UserEvent> eventCaptor = ArgumentCaptor.forClass(UserEvent.class);
-        verify(kafkaTemplate).send(eq(testTopic), eq(userName), eventCaptor.capture());
+        assertThat(result).isCompletedWithValue(sendResult);
+        ArgumentCaptor<ProducerRecord<String, byte[]>> recordCaptor = ArgumentCaptor.captor();
+        verify(kafkaTemplate).send(recordCaptor.capture());
 
-        UserEvent sentEvent = eventCaptor.getValue();
-        assertThat(sentEvent.userName()).isEqualTo(userName);
-        assertThat(sentEvent.email()).isEqualTo(email);
-        assertThat(sentEvent.status()).isEqualTo(eventType);
-        assertThat(sentEvent.time()).isNotNull();
+        ProducerRecord<String, byte[]> sentRecord = recordCaptor.getValue();
+        assertThat(sentRecord.topic()).isEqualTo(testTopic);
+        assertThat(sentRecord.key()).isEqualTo(key);
+        assertThat(sentRecord.value()).isEqualTo(value);
+        assertThat(sentRecord.headers().lastHeader("event-type").value())
+                .isEqualTo("CREATED".getBytes(StandardCharsets.UTF_8));
     }
 
     @Test
-    @DisplayName("Должно выбрасываться исключение при ошибки отсылки")
-    void shouldThrowExceptionWhenSendFails() {
+    @DisplayName("Ошибка брокера завершает future с ошибкой и освобождает разрешение")
+    void shouldFailFutureAndReleasePermitWhenSendFails() {
 
-        CompletableFuture<SendResult<String, UserEvent>> future = new CompletableFuture<>();
+        CompletableFuture<SendResult<String, byte[]>> future = new CompletableFuture<>();
         future.completeExceptionally(new RuntimeException("Kafka unavailable"));
 
-        when(kafkaTemplate.send(eq(testTopic), eq(userName), any(UserEvent.class)))
-                .thenReturn(future);
+        when(kafkaTemplate.send(anyRecord()))
+                .thenReturn(future, new CompletableFuture<>());
+
+        CompletableFuture<SendResult<String, byte[]>> failed =
+                kafkaUserService.sendUserEventAsync(key, value, headers);
+        CompletableFuture<SendResult<String, byte[]>> next =
+                kafkaUserService.sendUserEventAsync(key, value, headers);
+
+        assertThat(failed).isCompletedExceptionally();
+        assertThat(next).isNotDone();
+        verify(kafkaTemplate, times(2)).send(anyRecord());
+    }
 
-        assertThatThrownBy(() -> kafkaUserService.sendUserEvent(userName, email, eventType))
-                .isInstanceOf(RuntimeException.class)
-                .hasMessageContaining("Kafka send failed");
+    @Test
+    @DisplayName("Синхронная ошибка KafkaTemplate возвращается как future с ошибкой")
+    void shouldFailFutureWhenTemplateThrows() {
+
+        when(kafkaTemplate.send(anyRecord()))
+                .thenThrow(new IllegalStateException("Producer closed"))
+                .thenReturn(new CompletableFuture<>());
 
-        verify(kafkaTemplate).send(eq(testTopic), eq(userName), any(UserEvent.class));
+        CompletableFuture<SendResult<String, byte[]>> failed =
+                kafkaUserService.sendUserEventAsync(key, value, headers);
+        CompletableFuture<SendResult<String, byte[]>> next =
+                kafkaUserService.sendUserEventAsync(key, value, headers);
+
+        assertThat(failed).isCompletedExceptionally();
+        assertThat(next).isNotDone();
     }
 
     @Test
-    @DisplayName("Должно выбрасываться исключение по таймауту")
-    void shouldThrowExceptionOnTimeout() {
+    @DisplayName("Асинхронная отправка не ждёт подтверждения брокера")
+    void shouldReturnPendingFutureForAsyncSend() {
 
-        CompletableFuture<SendResult<String, UserEvent>> future = new CompletableFuture<>();
+        CompletableFuture<SendResult<String, byte[]>> future = new CompletableFuture<>();
 
-        when(kafkaTemplate.send(eq(testTopic), eq(userName), any(UserEvent.class)))
+        when(kafkaTemplate.send(anyRecord()))
                 .thenReturn(future);
 
-        assertThatThrownBy(() -> kafkaUserService.sendUserEvent(userName, email, eventType))
-                .isInstanceOf(RuntimeException.class)
-                .hasMessageContaining("Kafka send failed");
+        CompletableFuture<SendResult<String, byte[]>> result =
+                kafkaUserService.sendUserEventAsync(key, value, headers);
+
+        assertThat(result).isNotDone();
+    }
+
+    @Test
+    @DisplayName("Отправка завершается ошибкой при превышении лимита неподтверждённых сообщений")
+    void shouldFailWhenInFlightLimitReached() {
+
+        when(kafkaTemplate.send(anyRecord()))
+                .thenReturn(new CompletableFuture<>());
+
+        kafkaUserService.sendUserEventAsync(key, value, headers);
+        CompletableFuture<SendResult<String, byte[]>> rejected =
+                kafkaUserService.sendUserEventAsync(key, value, headers);
+
+        assertThat(rejected).isCompletedExceptionally();
+        verify(kafkaTemplate, times(1)).send(anyRecord());
+    }
 
-        verify(kafkaTemplate).send(eq(testTopic), eq(userName), any(UserEvent.class));
+    @SuppressWarnings("unchecked")
+    private static ProducerRecord<String, byte[]> anyRecord() {
+        return any(ProducerRecord.class);
     }
-}
\ No newline at end of file
+}
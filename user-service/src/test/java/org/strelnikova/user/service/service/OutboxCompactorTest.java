@@ -0,0 +1,103 @@
+package org.strelnikova.user.service.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.strelnikova.user.service.model.UserEvent;
+import org.strelnikova.user.service.model.UserEventType;
+import org.strelnikova.user.service.model.outbox.OutboxEvent;
+import org.strelnikova.user.service.service.OutboxCompactor.Compaction;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("Тестирование OutboxCompactor. Проверяет слияние событий одного пользователя")
+class OutboxCompactorTest {
+
+    private static final String[] RULES = {"CREATED+UPDATED=CREATED", "UPDATED+UPDATED=UPDATED"};
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().build();
+    private final OutboxCompactor compactor = new OutboxCompactor(objectMapper, true, RULES);
+
+    @Test
+    @DisplayName("CREATED и последующие UPDATED сливаются в один CREATED с последним состоянием")
+    void shouldCollapseCreatedAndUpdatesIntoCreated() {
+        UUID userId = UUID.randomUUID();
+        OutboxEvent created = event(userId, UserEventType.CREATED, "Ivan");
+        OutboxEvent renamed = event(userId, UserEventType.UPDATED, "Ivan Petrov");
+        OutboxEvent renamedAgain = event(userId, UserEventType.UPDATED, "Ivan Sidorov");
+
+        Compaction compaction = compactor.compact(List.of(created, renamed, renamedAgain));
+
+        assertThat(compaction.events()).hasSize(1);
+        OutboxEvent survivor = compaction.events().get(0);
+        assertThat(survivor.getId()).isEqualTo(renamedAgain.getId());
+        assertThat(survivor.getEventType()).isEqualTo("CREATED");
+        assertThat(survivor.getCreatedAt()).isEqualTo(created.getCreatedAt());
+
+        UserEvent value = objectMapper.readValue(survivor.getRecordValue(), UserEvent.class);
+        assertThat(value.status()).isEqualTo(UserEventType.CREATED);
+        assertThat(value.userName()).isEqualTo("Ivan Sidorov");
+        assertThat(compaction.supersededBy(renamedAgain.getId())).containsExactly(created.getId(), renamed.getId());
+        assertThat(renamedAgain.getEventType()).isEqualTo("UPDATED");
+    }
+
+    @Test
+    @DisplayName("Пары без правила и события разных пользователей не сливаются")
+    void shouldKeepEventsWithoutRule() {
+        UUID userId = UUID.randomUUID();
+        OutboxEvent created = event(userId, UserEventType.CREATED, "Ivan");
+        OutboxEvent deleted = event(userId, UserEventType.DELETED, "Ivan");
+        OutboxEvent other = event(UUID.randomUUID(), UserEventType.UPDATED, "Petr");
+
+        Compaction compaction = compactor.compact(List.of(created, other, deleted));
+
+        assertThat(compaction.events()).containsExactly(created, deleted, other);
+        assertThat(compaction.superseded()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Одинаковый тип сохраняет исходную строку без перезаписи")
+    void shouldReuseLatestEventWhenTypeUnchanged() {
+        UUID userId = UUID.randomUUID();
+        OutboxEvent first = event(userId, UserEventType.UPDATED, "Ivan");
+        OutboxEvent second = event(userId, UserEventType.UPDATED, "Ivan Petrov");
+
+        Compaction compaction = compactor.compact(List.of(first, second));
+
+        assertThat(compaction.events()).containsExactly(second);
+        assertThat(compaction.supersededBy(second.getId())).containsExactly(first.getId());
+    }
+
+    @Test
+    @DisplayName("Выключенная компакция возвращает пакет как есть")
+    void shouldReturnBatchWhenDisabled() {
+        OutboxCompactor disabled = new OutboxCompactor(objectMapper, false, RULES);
+        UUID userId = UUID.randomUUID();
+        List<OutboxEvent> batch = List.of(
+                event(userId, UserEventType.CREATED, "Ivan"),
+                event(userId, UserEventType.UPDATED, "Ivan Petrov"));
+
+        assertThat(disabled.compact(batch).events()).isEqualTo(batch);
+    }
+
+    @Test
+    @DisplayName("Некорректное правило отклоняется при старте")
+    void shouldRejectInvalidRule() {
+        assertThatThrownBy(() -> new OutboxCompactor(objectMapper, true, new String[]{"CREATED=UPDATED"}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private OutboxEvent event(UUID userId, UserEventType type, String name) {
+        byte[] value = objectMapper.writeValueAsBytes(new UserEvent(name, "ivan@gmail.com", type, Instant.now()));
+        OutboxEvent event = new OutboxEvent(userId, type.name(), userId.toString(), value);
+        event.setId(UUID.randomUUID());
+        event.setCreatedAt(Instant.now());
+        return event;
+    }
+}
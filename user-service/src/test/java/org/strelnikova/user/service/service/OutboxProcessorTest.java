@@ -0,0 +1,376 @@
+package org.strelnikova.user.service.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.header.Header;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.strelnikova.user.service.model.UserEvent;
+import org.strelnikova.user.service.model.UserEventType;
+import org.strelnikova.user.service.model.outbox.OutboxEvent;
+import org.strelnikova.user.service.model.outbox.dto.UserEventPayload;
+import org.strelnikova.user.service.repository.OutboxEventRepository;
+import org.strelnikova.user.service.service.KafkaUserService.UserEventRecord;
+import org.strelnikova.user.service.service.OutboxProcessor.BatchResult;
+import tools.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Тестирование OutboxProcessor. Проверяет пакетную отправку и учёт ошибок")
+class OutboxProcessorTest {
+
+    private static final int BATCH_SIZE = 2;
+    private static final Instant CREATED_AT_BASE = Instant.parse("2026-01-01T00:00:00Z");
+    private static final AtomicInteger CREATED_AT_SEQUENCE = new AtomicInteger();
+
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    @Mock
+    private KafkaUserService kafkaUserService;
+
+    @Mock
+    private ObjectMapper objectMapper;
+
+    @Mock
+    private OutboxShardLeaseManager shardLeaseManager;
+
+    @Mock
+    private OutboxProcessor self;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private OutboxProcessor outboxProcessor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        outboxProcessor = new OutboxProcessor(outboxEventRepository, kafkaUserService, objectMapper,
+                shardLeaseManager, new OutboxCompactor(objectMapper, false, new String[0]),
+                new OutboxMetrics(outboxEventRepository, meterRegistry), self);
+        ReflectionTestUtils.setField(outboxProcessor, "batchSize", BATCH_SIZE);
+        ReflectionTestUtils.setField(outboxProcessor, "drainUntilEmpty", true);
+        ReflectionTestUtils.setField(outboxProcessor, "sendTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(outboxProcessor, "maxRetries", 5);
+        ReflectionTestUtils.setField(outboxProcessor, "retryBaseDelaySeconds", 5);
+        ReflectionTestUtils.setField(outboxProcessor, "retryMaxDelaySeconds", 300);
+    }
+
+    @Test
+    @DisplayName("Пакет событий отправляется и помечается SENT одним запросом")
+    void shouldSendBatchAndMarkSent() {
+        OutboxEvent first = event(UserEventType.CREATED);
+        OutboxEvent second = event(UserEventType.UPDATED);
+
+        when(outboxEventRepository.claimPendingBatch(BATCH_SIZE)).thenReturn(List.of(first, second));
+        when(kafkaUserService.sendUserEventAsync(anyString(), any(), anyList())).thenReturn(acked());
+
+        BatchResult result = outboxProcessor.processBatch();
+
+        assertThat(result).isEqualTo(new BatchResult(2, 2, 0));
+        verify(kafkaUserService).sendUserEventAsync(eq(first.getRecordKey()), aryEq(first.getRecordValue()), anyList());
+        verify(kafkaUserService).sendUserEventAsync(eq(second.getRecordKey()), aryEq(second.getRecordValue()), anyList());
+        verify(outboxEventRepository).markSent(List.of(first.getId(), second.getId()), createdAts(first, second));
+        verify(outboxEventRepository, never()).markFailedAttempt(any(), any(), anyInt(), anyInt(), anyInt());
+        verifyNoInteractions(objectMapper);
+    }
+
+    @Test
+    @DisplayName("Заголовки записи содержат id и тип события outbox")
+    void shouldAttachOutboxHeaders() {
+        OutboxEvent created = event(UserEventType.CREATED);
+
+        when(outboxEventRepository.claimPendingBatch(BATCH_SIZE)).thenReturn(List.of(created));
+        when(kafkaUserService.sendUserEventAsync(anyString(), any(), anyList())).thenReturn(acked());
+
+        outboxProcessor.processBatch();
+
+        ArgumentCaptor<List<Header>> headers = ArgumentCaptor.captor();
+        verify(kafkaUserService).sendUserEventAsync(anyString(), any(), headers.capture());
+        assertThat(headers.getValue())
+                .extracting(Header::key, header -> new String(header.value(), StandardCharsets.UTF_8))
+                .containsExactly(
+                        tuple(OutboxProcessor.HEADER_EVENT_ID, created.getId().toString()),
+                        tuple(OutboxProcessor.HEADER_EVENT_TYPE, "CREATED"));
+    }
+
+    @Test
+    @DisplayName("Старые события без готовой записи собираются из JSON-payload")
+    void shouldConvertLegacyPayload() {
+        OutboxEvent legacy = new OutboxEvent();
+        legacy.setId(UUID.randomUUID());
+        legacy.setCreatedAt(nextCreatedAt());
+        legacy.setAggregateId(UUID.randomUUID());
+        legacy.setEventType(UserEventType.UPDATED.name());
+        legacy.setPayload("{\"userName\":\"Ivan\",\"email\":\"ivan@gmail.com\"}");
+        byte[] converted = "converted".getBytes(StandardCharsets.UTF_8);
+
+        when(outboxEventRepository.claimPendingBatch(BATCH_SIZE)).thenReturn(List.of(legacy));
+        when(objectMapper.readValue(legacy.getPayload(), UserEventPayload.class))
+                .thenReturn(new UserEventPayload("Ivan", "ivan@gmail.com"));
+        when(objectMapper.writeValueAsBytes(any(UserEvent.class))).thenReturn(converted);
+        when(kafkaUserService.sendUserEventAsync(anyString(), any(), anyList())).thenReturn(acked());
+
+        BatchResult result = outboxProcessor.processBatch();
+
+        assertThat(result).isEqualTo(new BatchResult(1, 1, 0));
+        verify(kafkaUserService).sendUserEventAsync(eq(legacy.getAggregateId().toString()), aryEq(converted), anyList());
+    }
+
+    @Test
+    @DisplayName("Неотправленные события получают попытку, отправленные - статус SENT")
+    void shouldRecordFailedAttempts() {
+        OutboxEvent ok = event(UserEventType.CREATED);
+        OutboxEvent broken = event(UserEventType.DELETED);
+
+        when(outboxEventRepository.claimPendingBatch(BATCH_SIZE)).thenReturn(List.of(ok, broken));
+        when(kafkaUserService.sendUserEventAsync(eq(ok.getRecordKey()), any(), anyList()))
+                .thenReturn(acked());
+        when(kafkaUserService.sendUserEventAsync(eq(broken.getRecordKey()), any(), anyList()))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("Kafka unavailable")));
+
+        BatchResult result = outboxProcessor.processBatch();
+
+        assertThat(result).isEqualTo(new BatchResult(2, 1, 1));
+        verify(outboxEventRepository).markSent(List.of(ok.getId()), createdAts(ok));
+        verify(outboxEventRepository).markFailedAttempt(eq(List.of(broken.getId())), eq(createdAts(broken)), eq(5), eq(5), eq(300));
+        assertThat(meterRegistry.get("outbox.events.sent").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("outbox.events.failed.attempts").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("outbox.publish.latency").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("После ошибки последующие события того же пользователя не отправляются")
+    void shouldKeepPerAggregateOrderAfterFailure() {
+        UUID userId = UUID.randomUUID();
+        OutboxEvent created = event(userId, UserEventType.CREATED);
+        OutboxEvent updated = event(userId, UserEventType.UPDATED);
+
+        when(outboxEventRepository.claimPendingBatch(BATCH_SIZE)).thenReturn(List.of(created, updated));
+        when(kafkaUserService.sendUserEventAsync(anyString(), aryEq(created.getRecordValue()), anyList()))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("Kafka unavailable")));
+
+        BatchResult result = outboxProcessor.processBatch();
+
+        assertThat(result).isEqualTo(new BatchResult(2, 0, 1));
+        verify(kafkaUserService, never()).sendUserEventAsync(anyString(), aryEq(updated.getRecordValue()), anyList());
+        verify(outboxEventRepository).markFailedAttempt(eq(List.of(created.getId())), eq(createdAts(created)), eq(5), eq(5), eq(300));
+        verify(outboxEventRepository, never()).markSent(any(), any());
+    }
+
+    @Test
+    @DisplayName("События одного пользователя отправляются по очереди после подтверждения предыдущего")
+    void shouldSendEventsOfOneAggregateInOrder() {
+        UUID userId = UUID.randomUUID();
+        OutboxEvent created = event(userId, UserEventType.CREATED);
+        OutboxEvent updated = event(userId, UserEventType.UPDATED);
+
+        when(outboxEventRepository.claimPendingBatch(BATCH_SIZE)).thenReturn(List.of(created, updated));
+        when(kafkaUserService.sendUserEventAsync(anyString(), any(), anyList())).thenReturn(acked());
+
+        BatchResult result = outboxProcessor.processBatch();
+
+        assertThat(result).isEqualTo(new BatchResult(2, 2, 0));
+        InOrder inOrder = inOrder(kafkaUserService);
+        inOrder.verify(kafkaUserService).sendUserEventAsync(eq(userId.toString()), aryEq(created.getRecordValue()), anyList());
+        inOrder.verify(kafkaUserService).sendUserEventAsync(eq(userId.toString()), aryEq(updated.getRecordValue()), anyList());
+        verify(outboxEventRepository).markSent(List.of(created.getId(), updated.getId()), createdAts(created, updated));
+    }
+
+    @Test
+    @DisplayName("В транзакционном режиме события шарда публикуются одной транзакцией")
+    void shouldPublishShardInOneTransaction() {
+        UUID userId = UUID.randomUUID();
+        OutboxEvent created = event(userId, UserEventType.CREATED);
+        OutboxEvent updated = event(userId, UserEventType.UPDATED);
+
+        when(kafkaUserService.isTransactional()).thenReturn(true);
+        when(outboxEventRepository.claimPendingBatch(BATCH_SIZE)).thenReturn(List.of(created, updated));
+
+        BatchResult result = outboxProcessor.processBatch();
+
+        assertThat(result).isEqualTo(new BatchResult(2, 2, 0));
+        ArgumentCaptor<List<UserEventRecord>> records = ArgumentCaptor.captor();
+        verify(kafkaUserService).sendUserEventsInTransaction(eq(created.getShard()), records.capture());
+        assertThat(records.getValue()).extracting(UserEventRecord::value)
+                .containsExactly(created.getRecordValue(), updated.getRecordValue());
+        verify(kafkaUserService, never()).sendUserEventAsync(anyString(), any(), anyList());
+        verify(outboxEventRepository).markSent(List.of(created.getId(), updated.getId()), createdAts(created, updated));
+    }
+
+    @Test
+    @DisplayName("Прерванная транзакция шарда засчитывает попытку всем его событиям")
+    void shouldFailWholeShardWhenTransactionAborts() {
+        UUID userId = UUID.randomUUID();
+        OutboxEvent created = event(userId, UserEventType.CREATED);
+        OutboxEvent updated = event(userId, UserEventType.UPDATED);
+
+        when(kafkaUserService.isTransactional()).thenReturn(true);
+        when(outboxEventRepository.claimPendingBatch(BATCH_SIZE)).thenReturn(List.of(created, updated));
+        doThrow(new RuntimeException("Transaction aborted"))
+                .when(kafkaUserService).sendUserEventsInTransaction(anyInt(), anyList());
+
+        BatchResult result = outboxProcessor.processBatch();
+
+        assertThat(result).isEqualTo(new BatchResult(2, 0, 2));
+        verify(outboxEventRepository).markFailedAttempt(eq(List.of(created.getId(), updated.getId())),
+                eq(createdAts(created, updated)), eq(5), eq(5), eq(300));
+        verify(outboxEventRepository, never()).markSent(any(), any());
+    }
+
+    @Test
+    @DisplayName("Вытесненные события помечаются COMPACTED только после отправки заменившего их события")
+    void shouldMarkSupersededEventsCompactedAfterSend() {
+        OutboxProcessor compactingProcessor = new OutboxProcessor(outboxEventRepository, kafkaUserService, objectMapper,
+                shardLeaseManager, new OutboxCompactor(objectMapper, true, new String[]{"UPDATED+UPDATED=UPDATED"}),
+                new OutboxMetrics(outboxEventRepository, meterRegistry), self);
+        ReflectionTestUtils.setField(compactingProcessor, "batchSize", BATCH_SIZE);
+        ReflectionTestUtils.setField(compactingProcessor, "sendTimeoutMs", 1000L);
+        UUID userId = UUID.randomUUID();
+        OutboxEvent first = event(userId, UserEventType.UPDATED);
+        OutboxEvent second = event(userId, UserEventType.UPDATED);
+
+        when(outboxEventRepository.claimPendingBatch(BATCH_SIZE)).thenReturn(List.of(first, second));
+        when(kafkaUserService.sendUserEventAsync(anyString(), any(), anyList())).thenReturn(acked());
+
+        BatchResult result = compactingProcessor.processBatch();
+
+        assertThat(result).isEqualTo(new BatchResult(2, 1, 0));
+        verify(kafkaUserService, times(1)).sendUserEventAsync(anyString(), any(), anyList());
+        verify(outboxEventRepository).markSent(List.of(second.getId()), createdAts(second));
+        verify(outboxEventRepository).markCompacted(List.of(first.getId()), createdAts(first));
+    }
+
+    @Test
+    @DisplayName("При шардировании забираются только события арендованных шардов")
+    void shouldClaimOnlyOwnedShardsWhenShardingEnabled() {
+        when(shardLeaseManager.isEnabled()).thenReturn(true);
+        when(shardLeaseManager.getInstanceId()).thenReturn("user-service-1");
+        when(outboxEventRepository.claimPendingBatchForOwner("user-service-1", BATCH_SIZE)).thenReturn(List.of());
+
+        outboxProcessor.processBatch();
+
+        verify(outboxEventRepository, never()).claimPendingBatch(anyInt());
+    }
+
+    @Test
+    @DisplayName("Пустая очередь не приводит к обновлениям")
+    void shouldDoNothingWhenNothingPending() {
+        when(outboxEventRepository.claimPendingBatch(BATCH_SIZE)).thenReturn(List.of());
+
+        BatchResult result = outboxProcessor.processBatch();
+
+        assertThat(result).isEqualTo(new BatchResult(0, 0, 0));
+        verifyNoInteractions(kafkaUserService);
+        verify(outboxEventRepository, never()).markSent(any(), any());
+    }
+
+    @Test
+    @DisplayName("Полные пакеты обрабатываются до опустошения очереди")
+    void shouldDrainWhileBatchesAreFull() {
+        when(self.processBatch()).thenReturn(
+                new BatchResult(BATCH_SIZE, BATCH_SIZE, 0),
+                new BatchResult(BATCH_SIZE, BATCH_SIZE, 0),
+                new BatchResult(1, 1, 0));
+
+        outboxProcessor.processOutboxEvents();
+
+        verify(self, times(3)).processBatch();
+    }
+
+    @Test
+    @DisplayName("Ошибка отправки останавливает дренаж до следующего запуска")
+    void shouldStopDrainingOnFailure() {
+        when(self.processBatch()).thenReturn(new BatchResult(BATCH_SIZE, 1, 1));
+
+        outboxProcessor.processOutboxEvents();
+
+        verify(self, times(1)).processBatch();
+    }
+
+    @Test
+    @DisplayName("Уведомления, пришедшие во время дренажа, дают ровно один повторный запуск")
+    void shouldRerunOnceForWakeupsDuringDrain() throws Exception {
+        CountDownLatch drainStarted = new CountDownLatch(1);
+        CountDownLatch releaseDrain = new CountDownLatch(1);
+        AtomicInteger batches = new AtomicInteger();
+        when(self.processBatch()).thenAnswer(invocation -> {
+            if (batches.incrementAndGet() == 1) {
+                drainStarted.countDown();
+                assertThat(releaseDrain.await(5, TimeUnit.SECONDS)).isTrue();
+            }
+            return new BatchResult(0, 0, 0);
+        });
+
+        Thread relay = new Thread(outboxProcessor::processOutboxEvents, "relay");
+        relay.start();
+        assertThat(drainStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // The relay lock is taken: both wakeups only leave a rerun request and return at once
+        outboxProcessor.processOutboxEvents();
+        outboxProcessor.processOutboxEvents();
+        assertThat(batches.get()).isEqualTo(1);
+
+        releaseDrain.countDown();
+        relay.join(5000);
+
+        assertThat(relay.isAlive()).isFalse();
+        verify(self, times(2)).processBatch();
+    }
+
+    @Test
+    @DisplayName("Запуск без параллельных уведомлений не повторяется")
+    void shouldNotRerunWithoutWakeups() {
+        when(self.processBatch()).thenReturn(new BatchResult(0, 0, 0));
+
+        outboxProcessor.processOutboxEvents();
+
+        verify(self, times(1)).processBatch();
+    }
+
+    private static CompletableFuture<SendResult<String, byte[]>> acked() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private static OutboxEvent event(UserEventType type) {
+        return event(UUID.randomUUID(), type);
+    }
+
+    private static OutboxEvent event(UUID aggregateId, UserEventType type) {
+        OutboxEvent event = new OutboxEvent(aggregateId, type.name(), aggregateId.toString(),
+                type.name().getBytes(StandardCharsets.UTF_8));
+        event.setId(UUID.randomUUID());
+        event.setCreatedAt(nextCreatedAt());
+        return event;
+    }
+
+    private static Instant nextCreatedAt() {
+        return CREATED_AT_BASE.plusSeconds(CREATED_AT_SEQUENCE.incrementAndGet());
+    }
+
+    private static List<Instant> createdAts(OutboxEvent... events) {
+        return Arrays.stream(events).map(OutboxEvent::getCreatedAt).toList();
+    }
+}
@@ -0,0 +1,267 @@
+package org.strelnikova.user.service.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.strelnikova.user.service.repository.OutboxEventRepository;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@DisplayName("Тестирование OutboxRetentionJob. Проверяет выбор партиций и блокировку между репликами")
+class OutboxRetentionJobTest {
+
+    private static final LocalDate TODAY = LocalDate.now(ZoneOffset.UTC);
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final OutboxEventRepository outboxEventRepository = mock(OutboxEventRepository.class);
+    private final OutboxRetentionJob job = new OutboxRetentionJob(jdbcTemplate, outboxEventRepository);
+
+    private final List<String> executed = new ArrayList<>();
+    private boolean lockAcquired = true;
+    private List<String> partitions = List.of();
+    private List<String> pendingDetaches = List.of();
+    private Set<String> partitionsWithUnsentRows = Set.of();
+    private boolean hasDefaultPartition = false;
+    private boolean defaultPartitionEmpty = false;
+    private String lockedStatement;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ReflectionTestUtils.setField(job, "enabled", true);
+        ReflectionTestUtils.setField(job, "sentRetentionDays", 7);
+        ReflectionTestUtils.setField(job, "partitionsAhead", 1);
+        ReflectionTestUtils.setField(job, "lockTimeoutMs", 2000L);
+
+        Connection connection = fakeConnection();
+        when(jdbcTemplate.execute(any(ConnectionCallback.class)))
+                .thenAnswer(invocation -> invocation.<ConnectionCallback<?>>getArgument(0).doInConnection(connection));
+    }
+
+    @Test
+    @DisplayName("Имя партиции разбирается в дату, посторонние таблицы пропускаются")
+    void shouldParsePartitionDay() {
+        assertThat(OutboxRetentionJob.partitionDay("outbox_events_p20260131")).isEqualTo(LocalDate.of(2026, 1, 31));
+        assertThat(OutboxRetentionJob.partitionName(LocalDate.of(2026, 1, 31))).isEqualTo("outbox_events_p20260131");
+        assertThat(OutboxRetentionJob.partitionDay("outbox_events_default")).isNull();
+        assertThat(OutboxRetentionJob.partitionDay("outbox_events_p2026013")).isNull();
+        assertThat(OutboxRetentionJob.partitionDay("outbox_events_p20261399")).isNull();
+        assertThat(OutboxRetentionJob.partitionDay("x_outbox_events_p20260131")).isNull();
+    }
+
+    @Test
+    @DisplayName("Истёкшими считаются только партиции целиком до границы хранения")
+    void shouldSelectOnlyPartitionsBeforeCutoff() {
+        LocalDate cutoff = LocalDate.of(2026, 1, 10);
+
+        List<String> expired = OutboxRetentionJob.partitionsBefore(List.of(
+                "outbox_events_default",
+                "outbox_events_p20260108",
+                "outbox_events_p20260109",
+                "outbox_events_p20260110",
+                "outbox_events_p20260111"), cutoff);
+
+        assertThat(expired).containsExactly("outbox_events_p20260108", "outbox_events_p20260109");
+    }
+
+    @Test
+    @DisplayName("Партиция создаётся на сутки UTC")
+    void shouldCreateDailyPartitionInUtc() {
+        assertThat(OutboxRetentionJob.createPartitionSql(LocalDate.of(2026, 12, 31))).isEqualTo(
+                "CREATE TABLE IF NOT EXISTS outbox_events_p20261231 PARTITION OF outbox_events "
+                        + "FOR VALUES FROM ('2026-12-31 00:00:00+00') TO ('2027-01-01 00:00:00+00')");
+    }
+
+    @Test
+    @DisplayName("Из default-партиции удаляются только SENT и COMPACTED строки старше срока хранения")
+    void shouldPurgeOnlySentRowsFromDefaultPartition() {
+        String sql = OutboxRetentionJob.purgeDefaultPartitionSql(7);
+
+        assertThat(sql)
+                .startsWith("DELETE FROM outbox_events_default")
+                .contains("status IN ('SENT', 'COMPACTED')")
+                .contains("make_interval(days => 7)")
+                .contains("LIMIT 10000");
+    }
+
+    @Test
+    @DisplayName("Истёкшие партиции без неотправленных строк отсоединяются конкурентно и затем удаляются")
+    void shouldDetachConcurrentlyAndDropExpiredFullySentPartitions() {
+        String expired = OutboxRetentionJob.partitionName(TODAY.minusDays(10));
+        String expiredWithPending = OutboxRetentionJob.partitionName(TODAY.minusDays(9));
+        String cutoffDay = OutboxRetentionJob.partitionName(TODAY.minusDays(7));
+        partitions = List.of(expired, expiredWithPending, cutoffDay, OutboxRetentionJob.partitionName(TODAY));
+        partitionsWithUnsentRows = Set.of(expiredWithPending);
+
+        job.run();
+
+        assertThat(ddl()).containsExactly(
+                "ALTER TABLE outbox_events DETACH PARTITION " + expired + " CONCURRENTLY",
+                "DROP TABLE " + expired);
+        assertThat(executed).contains(
+                OutboxRetentionJob.createPartitionSql(TODAY),
+                OutboxRetentionJob.createPartitionSql(TODAY.plusDays(1)));
+        assertThat(executed).doesNotContain(OutboxRetentionJob.purgeDefaultPartitionSql(7));
+        verify(outboxEventRepository).moveFailedToDeadLetter();
+        assertThat(executed).first().isEqualTo("SET lock_timeout = 2000");
+        assertThat(executed).endsWith("RESET lock_timeout", "SELECT pg_advisory_unlock(" + 0x6f7574626f78L + ")");
+    }
+
+    @Test
+    @DisplayName("В режиме архива отсоединённая партиция переносится в схему outbox_archive")
+    void shouldArchiveExpiredPartition() {
+        ReflectionTestUtils.setField(job, "archive", true);
+        String expired = OutboxRetentionJob.partitionName(TODAY.minusDays(10));
+        partitions = List.of(expired);
+
+        job.run();
+
+        assertThat(ddl()).containsExactly(
+                "ALTER TABLE outbox_events DETACH PARTITION " + expired + " CONCURRENTLY",
+                "ALTER TABLE " + expired + " SET SCHEMA outbox_archive");
+    }
+
+    @Test
+    @DisplayName("Пока есть default-партиция, отсоединение обычное, а из default удаляются старые строки")
+    void shouldDetachPlainlyWhileDefaultPartitionExists() {
+        hasDefaultPartition = true;
+        String expired = OutboxRetentionJob.partitionName(TODAY.minusDays(10));
+        partitions = List.of("outbox_events_default", expired);
+
+        job.run();
+
+        assertThat(ddl()).containsExactly(
+                "ALTER TABLE outbox_events DETACH PARTITION " + expired,
+                "DROP TABLE " + expired);
+        assertThat(executed).contains(OutboxRetentionJob.purgeDefaultPartitionSql(7));
+    }
+
+    @Test
+    @DisplayName("Опустевшая default-партиция отсоединяется и удаляется")
+    void shouldRetireEmptyDefaultPartition() {
+        hasDefaultPartition = true;
+        defaultPartitionEmpty = true;
+
+        job.run();
+
+        assertThat(ddl()).containsExactly(
+                "ALTER TABLE outbox_events DETACH PARTITION outbox_events_default",
+                "DROP TABLE outbox_events_default");
+    }
+
+    @Test
+    @DisplayName("Прерванное конкурентное отсоединение завершается через FINALIZE")
+    void shouldFinalizePendingDetach() {
+        String pending = OutboxRetentionJob.partitionName(TODAY.minusDays(12));
+        pendingDetaches = List.of(pending);
+
+        job.run();
+
+        assertThat(ddl()).containsExactly(
+                "ALTER TABLE outbox_events DETACH PARTITION " + pending + " FINALIZE",
+                "DROP TABLE " + pending);
+    }
+
+    @Test
+    @DisplayName("По lock_timeout задание отступает до следующего запуска и снимает блокировку")
+    void shouldBackOffOnLockTimeout() {
+        String expired = OutboxRetentionJob.partitionName(TODAY.minusDays(10));
+        partitions = List.of(expired);
+        lockedStatement = "ALTER TABLE outbox_events DETACH PARTITION " + expired + " CONCURRENTLY";
+
+        job.run();
+
+        assertThat(ddl()).isEmpty();
+        assertThat(executed).endsWith("RESET lock_timeout", "SELECT pg_advisory_unlock(" + 0x6f7574626f78L + ")");
+    }
+
+    @Test
+    @DisplayName("Без advisory-блокировки реплика ничего не делает, включая перенос FAILED")
+    void shouldSkipEverythingWithoutLock() {
+        lockAcquired = false;
+        partitions = List.of(OutboxRetentionJob.partitionName(TODAY.minusDays(10)));
+
+        job.run();
+
+        verify(outboxEventRepository, never()).moveFailedToDeadLetter();
+        assertThat(executed).isEmpty();
+    }
+
+    /** Detaches, drops and schema moves, in the order they were executed. */
+    private List<String> ddl() {
+        return executed.stream().filter(sql -> sql.startsWith("DROP") || sql.startsWith("ALTER")).toList();
+    }
+
+    /**
+     * Answers the job's catalogue queries from the test fields and records every other statement.
+     */
+    private Connection fakeConnection() throws SQLException {
+        Statement statement = mock(Statement.class);
+        when(statement.executeQuery(anyString())).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            if (sql.contains("pg_try_advisory_lock")) {
+                return resultSet(List.of(lockAcquired));
+            }
+            if (sql.contains("pg_inherits")) {
+                return resultSet(new ArrayList<>(sql.contains("inhdetachpending = true") ? pendingDetaches : partitions));
+            }
+            if (sql.contains("pg_partitioned_table")) {
+                return resultSet(List.of(hasDefaultPartition));
+            }
+            if (sql.equals("SELECT EXISTS (SELECT 1 FROM outbox_events_default)")) {
+                return resultSet(List.of(!defaultPartitionEmpty));
+            }
+            if (sql.startsWith("SELECT EXISTS")) {
+                return resultSet(List.of(partitionsWithUnsentRows.stream().anyMatch(sql::contains)));
+            }
+            throw new IllegalStateException("Unexpected query: " + sql);
+        });
+        when(statement.execute(anyString())).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            if (sql.equals(lockedStatement)) {
+                throw new SQLException("canceling statement due to lock timeout", "55P03");
+            }
+            return executed.add(sql);
+        });
+        when(statement.executeUpdate(anyString())).thenAnswer(invocation -> {
+            executed.add(invocation.getArgument(0));
+            return 0;
+        });
+
+        Connection connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(statement);
+        return connection;
+    }
+
+    private static ResultSet resultSet(List<?> rows) throws SQLException {
+        Iterator<?> iterator = rows.iterator();
+        Object[] current = new Object[1];
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenAnswer(invocation -> {
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            current[0] = iterator.next();
+            return true;
+        });
+        when(rs.getString(1)).thenAnswer(invocation -> (String) current[0]);
+        when(rs.getBoolean(1)).thenAnswer(invocation -> (Boolean) current[0]);
+        return rs;
+    }
+}
@@ -0,0 +1,143 @@
+package org.strelnikova.user.service.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.strelnikova.user.service.repository.OutboxShardLeaseRepository;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Тестирование OutboxShardLeaseManager. Проверяет распределение шардов между репликами")
+class OutboxShardLeaseManagerTest {
+
+    private static final int TTL_SECONDS = 30;
+
+    @Mock
+    private OutboxShardLeaseRepository leaseRepository;
+
+    private OutboxShardLeaseManager leaseManager;
+    private String instanceId;
+
+    @BeforeEach
+    void setUp() {
+        leaseManager = new OutboxShardLeaseManager(leaseRepository, "user-service");
+        ReflectionTestUtils.setField(leaseManager, "enabled", true);
+        ReflectionTestUtils.setField(leaseManager, "leaseTtlSeconds", TTL_SECONDS);
+        instanceId = leaseManager.getInstanceId();
+    }
+
+    @Test
+    @DisplayName("Единственная реплика забирает все 64 шарда")
+    void shouldClaimAllShardsWhenAlone() {
+        when(leaseRepository.countLiveInstances(TTL_SECONDS)).thenReturn(1L);
+        when(leaseRepository.findOwnedShards(instanceId)).thenReturn(List.of(), shards(0, 64));
+
+        leaseManager.rebalance();
+
+        verify(leaseRepository).claimFreeShards(instanceId, 64, TTL_SECONDS);
+        verify(leaseRepository, never()).releaseShards(anyString(), anyInt(), anyInt());
+        assertThat(leaseManager.getOwnedShards()).hasSize(64);
+    }
+
+    @Test
+    @DisplayName("Реплика добирает шарды до справедливой доли с округлением вверх")
+    void shouldClaimUpToRoundedUpFairShare() {
+        when(leaseRepository.countLiveInstances(TTL_SECONDS)).thenReturn(3L);
+        when(leaseRepository.findOwnedShards(instanceId)).thenReturn(shards(0, 10), shards(0, 22));
+
+        leaseManager.rebalance();
+
+        // ceil(64 / 3) = 22
+        verify(leaseRepository).claimFreeShards(instanceId, 12, TTL_SECONDS);
+        assertThat(leaseManager.getOwnedShards()).isEqualTo(shards(0, 22));
+    }
+
+    @Test
+    @DisplayName("С появлением новой реплики лишние шарды отдаются")
+    void shouldReleaseShardsAboveFairShare() {
+        when(leaseRepository.countLiveInstances(TTL_SECONDS)).thenReturn(2L);
+        when(leaseRepository.findOwnedShards(instanceId)).thenReturn(shards(0, 64), shards(0, 32));
+
+        leaseManager.rebalance();
+
+        verify(leaseRepository).releaseShards(instanceId, 32, TTL_SECONDS);
+        verify(leaseRepository, never()).claimFreeShards(anyString(), anyInt(), anyInt());
+        assertThat(leaseManager.getOwnedShards()).isEqualTo(shards(0, 32));
+    }
+
+    @Test
+    @DisplayName("Реплика со справедливой долей только продлевает аренду")
+    void shouldOnlyRenewAtFairShare() {
+        when(leaseRepository.countLiveInstances(TTL_SECONDS)).thenReturn(4L);
+        when(leaseRepository.findOwnedShards(instanceId)).thenReturn(shards(16, 32));
+
+        leaseManager.rebalance();
+
+        verify(leaseRepository, never()).claimFreeShards(anyString(), anyInt(), anyInt());
+        verify(leaseRepository, never()).releaseShards(anyString(), anyInt(), anyInt());
+        assertThat(leaseManager.getOwnedShards()).isEqualTo(shards(16, 32));
+    }
+
+    @Test
+    @DisplayName("Heartbeat и удаление мёртвых реплик идут до подсчёта живых и продления аренды")
+    void shouldHeartbeatBeforeCountingInstances() {
+        when(leaseRepository.countLiveInstances(TTL_SECONDS)).thenReturn(1L);
+        when(leaseRepository.findOwnedShards(instanceId)).thenReturn(shards(0, 64));
+
+        leaseManager.rebalance();
+
+        InOrder inOrder = inOrder(leaseRepository);
+        inOrder.verify(leaseRepository).registerHeartbeat(instanceId);
+        inOrder.verify(leaseRepository).deleteStaleInstances(TTL_SECONDS);
+        inOrder.verify(leaseRepository).countLiveInstances(TTL_SECONDS);
+        inOrder.verify(leaseRepository).renewLeases(instanceId, TTL_SECONDS);
+    }
+
+    @Test
+    @DisplayName("Пустой список живых реплик считается одной репликой")
+    void shouldTreatNoLiveInstancesAsOne() {
+        when(leaseRepository.countLiveInstances(TTL_SECONDS)).thenReturn(0L);
+        when(leaseRepository.findOwnedShards(instanceId)).thenReturn(List.of(), shards(0, 64));
+
+        leaseManager.rebalance();
+
+        verify(leaseRepository).claimFreeShards(instanceId, 64, TTL_SECONDS);
+    }
+
+    @Test
+    @DisplayName("При выключенном шардировании репозиторий не трогается")
+    void shouldDoNothingWhenDisabled() {
+        ReflectionTestUtils.setField(leaseManager, "enabled", false);
+
+        leaseManager.rebalance();
+        leaseManager.unregister();
+
+        verifyNoInteractions(leaseRepository);
+        assertThat(leaseManager.getOwnedShards()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("При остановке реплика снимается с учёта, аренды истекают сами")
+    void shouldUnregisterOnShutdown() {
+        leaseManager.unregister();
+
+        verify(leaseRepository).unregister(instanceId);
+        verifyNoMoreInteractions(leaseRepository);
+    }
+
+    private static List<Integer> shards(int fromInclusive, int toExclusive) {
+        return IntStream.range(fromInclusive, toExclusive).boxed().toList();
+    }
+}
@@ -0,0 +1,53 @@
+package org.strelnikova.user.service.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("User CSV Reader Tests")
+class UserCsvReaderTest {
+
+    @Test
+    @DisplayName("Should read quoted fields with commas, quotes and line breaks")
+    void shouldReadQuotedFields() throws Exception {
+        UserCsvReader reader = new UserCsvReader(new StringReader(
+                "name,email,age\r\n\"Ivanov, Ivan\",ivan@gmail.com,25\n\"Say \"\"hi\"\"\nthere\",petr@gmail.com,\n"));
+
+        assertThat(reader.readRecord()).isEqualTo(List.of("name", "email", "age"));
+        assertThat(reader.readRecord()).isEqualTo(List.of("Ivanov, Ivan", "ivan@gmail.com", "25"));
+        assertThat(reader.getRecordLine()).isEqualTo(2);
+        assertThat(reader.readRecord()).isEqualTo(List.of("Say \"hi\"\nthere", "petr@gmail.com", ""));
+        assertThat(reader.getRecordLine()).isEqualTo(3);
+        assertThat(reader.readRecord()).isNull();
+    }
+
+    @Test
+    @DisplayName("Should read last record without trailing line break")
+    void shouldReadLastRecordWithoutNewline() throws Exception {
+        UserCsvReader reader = new UserCsvReader(new StringReader("a,b"));
+
+        assertThat(reader.readRecord()).isEqualTo(List.of("a", "b"));
+        assertThat(reader.readRecord()).isNull();
+    }
+
+    @Test
+    @DisplayName("Should reject unterminated quoted field")
+    void shouldRejectUnterminatedQuote() {
+        UserCsvReader reader = new UserCsvReader(new StringReader("\"open,field\n"));
+
+        assertThatThrownBy(reader::readRecord).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Should reject field over the length limit")
+    void shouldRejectOversizedField() {
+        UserCsvReader reader = new UserCsvReader(new StringReader("x".repeat(UserCsvReader.MAX_FIELD_LENGTH + 1)));
+
+        assertThatThrownBy(reader::readRecord).isInstanceOf(IllegalArgumentException.class);
+    }
+}
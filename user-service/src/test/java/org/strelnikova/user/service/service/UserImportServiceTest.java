@@ -0,0 +1,142 @@
+package org.strelnikova.user.service.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.strelnikova.user.service.controller.dto.UserBatchItemResult;
+import org.strelnikova.user.service.controller.dto.UserImportStatus;
+import org.strelnikova.user.service.controller.dto.UserRequestDTO;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@DisplayName("User Import Service Tests")
+class UserImportServiceTest {
+
+    private UserService userService;
+    private UserImportService userImportService;
+
+    @BeforeEach
+    void setUp() {
+        userService = mock(UserService.class);
+        userImportService = new UserImportService(userService);
+        ReflectionTestUtils.setField(userImportService, "chunkSize", 2);
+        ReflectionTestUtils.setField(userImportService, "maxBatchSize", 1000);
+        ReflectionTestUtils.setField(userImportService, "queueCapacity", 1);
+        ReflectionTestUtils.setField(userImportService, "maxReportedFailures", 10);
+        ReflectionTestUtils.setField(userImportService, "importDirectory", "");
+    }
+
+    @AfterEach
+    void tearDown() {
+        userImportService.shutdown();
+    }
+
+    @Test
+    @DisplayName("Should write chunks and report rejected lines")
+    void shouldImportInChunks() {
+        // Every user named "Bad" is rejected by the service, the rest are created
+        when(userService.createUsers(anyList())).thenAnswer(invocation -> {
+            List<UserRequestDTO> requests = invocation.getArgument(0);
+            List<UserBatchItemResult> results = new ArrayList<>();
+            for (int i = 0; i < requests.size(); i++) {
+                results.add("Bad".equals(requests.get(i).name())
+                        ? UserBatchItemResult.rejected(i, "Name rejected")
+                        : UserBatchItemResult.created(i, null));
+            }
+            return results;
+        });
+        String csv = """
+                id,name,email,age,createdAt
+                1,Ivan,ivan@gmail.com,25,2026-01-01T10:00Z
+                2,Bad,bad@gmail.com,30,2026-01-01T10:00Z
+                3,Petr,petr@gmail.com,old,2026-01-01T10:00Z
+                4,Olga,olga@gmail.com,40,2026-01-01T10:00Z
+                """;
+
+        UserImportStatus status = userImportService.importCsv(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(status.state()).isEqualTo(UserImportStatus.State.COMPLETED);
+        assertThat(status.linesRead()).isEqualTo(4);
+        assertThat(status.created()).isEqualTo(2);
+        assertThat(status.rejected()).isEqualTo(2);
+        assertThat(status.failures()).extracting(UserImportStatus.Failure::line).containsExactlyInAnyOrder(3L, 4L);
+        verify(userService, times(2)).createUsers(anyList());
+        assertThat(userImportService.getStatus(status.id())).contains(status);
+    }
+
+    @Test
+    @DisplayName("Should fail the import when writing a chunk fails")
+    void shouldFailWhenWriterFails() {
+        when(userService.createUsers(anyList())).thenThrow(new IllegalStateException("database down"));
+        String csv = "name,email,age\nIvan,ivan@gmail.com,25\n";
+
+        UserImportStatus status = userImportService.importCsv(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(status.state()).isEqualTo(UserImportStatus.State.FAILED);
+        assertThat(status.error()).isEqualTo("database down");
+    }
+
+    @Test
+    @DisplayName("Should retry a chunk once when a concurrent insert violates the email constraint")
+    void shouldRetryChunkOnConstraintViolation() {
+        when(userService.createUsers(anyList()))
+                .thenThrow(new DataIntegrityViolationException("duplicate key value violates unique constraint"))
+                .thenReturn(List.of(UserBatchItemResult.rejected(0, "Email already in use: ivan@gmail.com")));
+        String csv = "name,email,age\nIvan,ivan@gmail.com,25\n";
+
+        UserImportStatus status = userImportService.importCsv(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(status.state()).isEqualTo(UserImportStatus.State.COMPLETED);
+        assertThat(status.rejected()).isEqualTo(1);
+        assertThat(status.failures()).extracting(UserImportStatus.Failure::line).containsExactly(2L);
+        verify(userService, times(2)).createUsers(anyList());
+    }
+
+    @Test
+    @DisplayName("Should fail the import when the retried chunk violates the constraint again")
+    void shouldFailWhenRetryViolatesConstraint() {
+        when(userService.createUsers(anyList()))
+                .thenThrow(new DataIntegrityViolationException("duplicate key value violates unique constraint"));
+        String csv = "name,email,age\nIvan,ivan@gmail.com,25\n";
+
+        UserImportStatus status = userImportService.importCsv(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(status.state()).isEqualTo(UserImportStatus.State.FAILED);
+        verify(userService, times(2)).createUsers(anyList());
+    }
+
+    @Test
+    @DisplayName("Should reject a chunk size above the batch limit at startup")
+    void shouldRejectChunkSizeAboveBatchLimit() {
+        ReflectionTestUtils.setField(userImportService, "chunkSize", 1001);
+
+        assertThatThrownBy(() -> userImportService.validateChunkSize())
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("app.users.batch.max-size");
+    }
+
+    @Test
+    @DisplayName("Should fail the import without the required header")
+    void shouldFailWithoutHeader() {
+        UserImportStatus status = userImportService.importCsv(
+                new ByteArrayInputStream("Ivan,ivan@gmail.com,25\n".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(status.state()).isEqualTo(UserImportStatus.State.FAILED);
+        verifyNoInteractions(userService);
+    }
+}
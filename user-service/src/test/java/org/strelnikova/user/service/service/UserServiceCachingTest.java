@@ -0,0 +1,200 @@
+package org.strelnikova.user.service.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.strelnikova.user.service.config.CacheConfig;
+import org.strelnikova.user.service.controller.UserMapper;
+import org.strelnikova.user.service.controller.dto.UserRequestDTO;
+import org.strelnikova.user.service.controller.dto.UserResponseDTO;
+import org.strelnikova.user.service.model.UserRow;
+import org.strelnikova.user.service.repository.OutboxEventRepository;
+import org.strelnikova.user.service.repository.UserRepository;
+import org.strelnikova.user.service.validation.UserValidator;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * The users cache as wired in the application: {@link CacheConfig} and the caching and transaction
+ * proxies around {@link UserServiceImpl}, with the repositories mocked.
+ */
+@SpringJUnitConfig(classes = {CacheConfig.class, UserServiceCachingTest.Config.class})
+@DisplayName("Тестирование кэша пользователей. Проверяет попадания и сброс после коммита")
+class UserServiceCachingTest {
+
+    private static final UUID ID = UUID.randomUUID();
+    private static final UserRequestDTO UPDATE = new UserRequestDTO("Petr", "petr@gmail.com", 30);
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        cacheManager.getCache(CacheConfig.USERS_CACHE).clear();
+        reset(userRepository, userMapper);
+
+        UserRow row = mock(UserRow.class);
+        when(row.getId()).thenReturn(ID);
+        when(row.getName()).thenReturn(UPDATE.name());
+        when(row.getEmail()).thenReturn(UPDATE.email());
+        when(userRepository.findDtoById(ID)).thenReturn(Optional.of(user(0L)));
+        when(userRepository.updateReturning(any(), any(), any(), any(), any())).thenReturn(Optional.of(row));
+        when(userRepository.deleteReturning(ID)).thenReturn(Optional.of(row));
+        when(userMapper.rowToResponseDTO(row)).thenReturn(user(1L));
+    }
+
+    @Test
+    @DisplayName("Повторное чтение пользователя отдаётся из кэша")
+    void shouldServeRepeatedReadFromCache() {
+        userService.getUserById(ID);
+        UserResponseDTO cached = userService.getUserById(ID);
+
+        assertThat(cached.version()).isEqualTo(0L);
+        verify(userRepository, times(1)).findDtoById(ID);
+    }
+
+    @Test
+    @DisplayName("Обновление сбрасывает пользователя из кэша")
+    void shouldEvictOnUpdate() {
+        userService.getUserById(ID);
+
+        userService.updateUser(ID, UPDATE, null);
+        userService.getUserById(ID);
+
+        verify(userRepository, times(2)).findDtoById(ID);
+    }
+
+    @Test
+    @DisplayName("Удаление сбрасывает пользователя из кэша")
+    void shouldEvictOnDelete() {
+        userService.getUserById(ID);
+
+        userService.deleteUser(ID);
+
+        assertThat(usersCache().get(ID)).isNull();
+    }
+
+    @Test
+    @DisplayName("Сброс откладывается до коммита внешней транзакции")
+    void shouldDeferEvictionUntilCommit() {
+        userService.getUserById(ID);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            userService.updateUser(ID, UPDATE, null);
+            assertThat(usersCache().get(ID)).isNotNull();
+        });
+
+        assertThat(usersCache().get(ID)).isNull();
+    }
+
+    @Test
+    @DisplayName("Откаченное обновление не сбрасывает пользователя из кэша")
+    void shouldKeepEntryWhenUpdateRollsBack() {
+        userService.getUserById(ID);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            userService.updateUser(ID, UPDATE, null);
+            status.setRollbackOnly();
+        });
+
+        assertThat(usersCache().get(ID)).isNotNull();
+        userService.getUserById(ID);
+        verify(userRepository, times(1)).findDtoById(ID);
+    }
+
+    private Cache usersCache() {
+        return cacheManager.getCache(CacheConfig.USERS_CACHE);
+    }
+
+    private static UserResponseDTO user(long version) {
+        return new UserResponseDTO(ID, "Ivan", "ivan@gmail.com", 25, OffsetDateTime.now(), version);
+    }
+
+    @Configuration
+    @EnableTransactionManagement
+    static class Config {
+
+        @Bean
+        UserRepository userRepository() {
+            return mock(UserRepository.class);
+        }
+
+        @Bean
+        UserMapper userMapper() {
+            return mock(UserMapper.class);
+        }
+
+        @Bean
+        UserService userService(UserRepository userRepository, UserMapper userMapper) {
+            return new UserServiceImpl(userRepository, userMapper, mock(UserValidator.class),
+                    mock(OutboxEventRepository.class), JsonMapper.builder().build(), mock(UserEmailFilter.class));
+        }
+
+        @Bean
+        PlatformTransactionManager transactionManager() {
+            return new NoOpTransactionManager();
+        }
+    }
+
+    /**
+     * Runs real transaction synchronization without a resource, which is all the transaction-aware
+     * cache needs to tell commit from rollback.
+     */
+    static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        // Lets an inner @Transactional call join the outer transaction instead of committing on its own
+        @Override
+        protected boolean isExistingTransaction(Object transaction) {
+            return TransactionSynchronizationManager.isActualTransactionActive();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
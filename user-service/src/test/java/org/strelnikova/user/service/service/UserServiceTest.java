@@ -1,5 +1,6 @@
 package org.strelnikova.user.service.service;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -8,12 +9,20 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Transactional;
 import org.strelnikova.user.service.controller.UserMapper;
+import org.strelnikova.user.service.controller.dto.UserBatchItemResult;
+import org.strelnikova.user.service.controller.dto.UserPage;
 import org.strelnikova.user.service.controller.dto.UserRequestDTO;
 import org.strelnikova.user.service.controller.dto.UserResponseDTO;
+import org.strelnikova.user.service.controller.dto.UserSearchFilter;
 import org.strelnikova.user.service.exception.UserNotFoundException;
 import org.strelnikova.user.service.exception.ValidationException;
 import org.strelnikova.user.service.model.User;
+import org.strelnikova.user.service.model.UserRow;
 import org.strelnikova.user.service.model.outbox.OutboxEvent;
 import org.strelnikova.user.service.repository.OutboxEventRepository;
 import org.strelnikova.user.service.repository.UserRepository;
@@ -21,13 +30,19 @@ import org.strelnikova.user.service.service.UserServiceImpl;
 import org.strelnikova.user.service.validation.UserValidator;
 import tools.jackson.databind.ObjectMapper;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.AssertionsForClassTypes.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -57,6 +72,14 @@ public class UserServiceTest {
     @Mock
     private ObjectMapper objectMapper;
 
+    @Mock
+    private UserEmailFilter userEmailFilter;
+
+    @BeforeEach
+    void setUpEmailFilter() {
+        // Possible hit by default, so the uniqueness lookups run as without the filter
+        lenient().when(userEmailFilter.mightContain(any())).thenReturn(true);
+    }
 
     @Nested
     @DisplayName("Create User")
@@ -70,7 +93,7 @@ public class UserServiceTest {
             OffsetDateTime createdAt = OffsetDateTime.now();
 
             UserResponseDTO expectedResponse = new UserResponseDTO(
-                    generatedId, TEST_NAME, TEST_EMAIL, TEST_AGE, createdAt
+                    generatedId, TEST_NAME, TEST_EMAIL, TEST_AGE, createdAt, 0L
             );
 
             doNothing().when(userValidator).validate(request);
@@ -124,6 +147,60 @@ public class UserServiceTest {
         }
     }
 
+    @Nested
+    @DisplayName("Email Filter")
+    class EmailFilterTests {
+
+        @Test
+        @DisplayName("Should skip the email lookup when the filter rules the email out")
+        void shouldSkipLookupForDefinitelyFreeEmail() {
+            UserRequestDTO request = new UserRequestDTO(TEST_NAME, TEST_EMAIL, TEST_AGE);
+            User user = new User(TEST_NAME, TEST_EMAIL, TEST_AGE);
+            ReflectionTestUtils.setField(user, "id", UUID.randomUUID());
+            when(userEmailFilter.mightContain(TEST_EMAIL)).thenReturn(false);
+            when(userMapper.requestDTOToUser(request)).thenReturn(user);
+            when(userRepository.save(user)).thenReturn(user);
+
+            userService.createUser(request);
+
+            verify(userRepository, never()).existsByEmail(any());
+            verify(userEmailFilter).put(TEST_EMAIL);
+        }
+
+        @Test
+        @DisplayName("Should record a false positive when a possible hit is free")
+        void shouldRecordFalsePositive() {
+            UserRequestDTO request = new UserRequestDTO(TEST_NAME, TEST_EMAIL, TEST_AGE);
+            User user = new User(TEST_NAME, TEST_EMAIL, TEST_AGE);
+            ReflectionTestUtils.setField(user, "id", UUID.randomUUID());
+            when(userRepository.existsByEmail(TEST_EMAIL)).thenReturn(false);
+            when(userMapper.requestDTOToUser(request)).thenReturn(user);
+            when(userRepository.save(user)).thenReturn(user);
+
+            userService.createUser(request);
+
+            verify(userEmailFilter).recordFalsePositive(1);
+        }
+
+        @Test
+        @DisplayName("Should look up every batch email even when the filter rules it out")
+        void shouldNotConsultFilterForBatch() {
+            ReflectionTestUtils.setField(userService, "maxBatchSize", 10);
+            UserRequestDTO first = new UserRequestDTO(TEST_NAME, TEST_EMAIL, TEST_AGE);
+            UserRequestDTO second = new UserRequestDTO(NEW_NAME, NEW_EMAIL, NEW_AGE);
+            when(userRepository.findExistingEmails(List.of(TEST_EMAIL, NEW_EMAIL))).thenReturn(Set.of(NEW_EMAIL));
+            User user = new User(TEST_NAME, TEST_EMAIL, TEST_AGE);
+            ReflectionTestUtils.setField(user, "id", UUID.randomUUID());
+            when(userMapper.requestDTOToUser(first)).thenReturn(user);
+
+            List<UserBatchItemResult> results = userService.createUsers(List.of(first, second));
+
+            assertThat(results.get(1).error()).contains("Email already in use");
+            verify(userEmailFilter, never()).mightContain(any());
+            verify(userEmailFilter).put(TEST_EMAIL);
+        }
+    }
+
     @Nested
     @DisplayName("Get User")
     class GetUserTests {
@@ -135,59 +212,220 @@ public class UserServiceTest {
             OffsetDateTime createdAt = OffsetDateTime.now();
 
             UserResponseDTO expectedResponse = new UserResponseDTO(
-                    id, TEST_NAME, TEST_EMAIL, TEST_AGE, createdAt
+                    id, TEST_NAME, TEST_EMAIL, TEST_AGE, createdAt, 0L
             );
 
-            when(userRepository.findById(id)).thenReturn(Optional.of(new User(TEST_NAME, TEST_EMAIL, TEST_AGE)));
-            when(userMapper.userToResponseDTO(any(User.class))).thenReturn(expectedResponse);
+            when(userRepository.findDtoById(id)).thenReturn(Optional.of(expectedResponse));
 
             UserResponseDTO result = userService.getUserById(id);
 
             assertThat(result.id()).isEqualTo(id);
             assertThat(result.name()).isEqualTo(TEST_NAME);
-            verify(userRepository).findById(id);
-            verifyNoInteractions(userValidator);
+            verify(userRepository, never()).findById(id);
+            verifyNoInteractions(userValidator, userMapper);
         }
 
         @Test
         @DisplayName("Should throw when user not found")
         void shouldThrowWhenNotFound() {
             UUID id = UUID.randomUUID();
-            when(userRepository.findById(id)).thenReturn(Optional.empty());
+            when(userRepository.findDtoById(id)).thenReturn(Optional.empty());
 
             assertThatThrownBy(() -> userService.getUserById(id))
                     .isInstanceOf(UserNotFoundException.class);
         }
+
+        @Test
+        @DisplayName("Should return version without loading the user")
+        void shouldReturnUserVersion() {
+            UUID id = UUID.randomUUID();
+            when(userRepository.findVersionById(id)).thenReturn(Optional.of(3L));
+
+            assertThat(userService.getUserVersion(id)).isEqualTo(3L);
+            verify(userRepository, never()).findById(id);
+        }
+
+        @Test
+        @DisplayName("Should read cached user and version in read-write transactions, i.e. from the primary")
+        void shouldReadCachedUserAndVersionFromPrimary() throws NoSuchMethodException {
+            for (String method : List.of("getUserById", "getUserVersion")) {
+                Transactional transactional = UserServiceImpl.class.getMethod(method, UUID.class)
+                        .getAnnotation(Transactional.class);
+                assertThat(transactional).isNotNull();
+                assertThat(transactional.readOnly()).isFalse();
+            }
+        }
+
+        @Test
+        @DisplayName("Should throw when version of missing user is requested")
+        void shouldThrowWhenVersionOfMissingUser() {
+            UUID id = UUID.randomUUID();
+            when(userRepository.findVersionById(id)).thenReturn(Optional.empty());
+
+            assertThatThrownBy(() -> userService.getUserVersion(id))
+                    .isInstanceOf(UserNotFoundException.class);
+        }
     }
 
     @Nested
-    @DisplayName("Get All Users")
-    class GetAllUsersTests {
+    @DisplayName("Get Users Page")
+    class GetUsersPageTests {
+
+        @BeforeEach
+        void setUpPageSizes() {
+            ReflectionTestUtils.setField(userService, "defaultPageSize", 2);
+            ReflectionTestUtils.setField(userService, "maxPageSize", 3);
+        }
 
         @Test
-        @DisplayName("Should return all users")
-        void shouldReturnAllUsers() {
-            UUID id1 = UUID.randomUUID();
-            UUID id2 = UUID.randomUUID();
-            OffsetDateTime now = OffsetDateTime.now();
+        @DisplayName("Should return first page with cursor of its last user")
+        void shouldReturnFirstPageWithNextCursor() {
+            UserResponseDTO first = userWithKey(OffsetDateTime.parse("2026-01-01T10:00:00Z"));
+            UserResponseDTO second = userWithKey(OffsetDateTime.parse("2026-01-01T10:00:01Z"));
+            UserResponseDTO third = userWithKey(OffsetDateTime.parse("2026-01-01T10:00:02Z"));
 
-            when(userRepository.findAll()).thenReturn(List.of(
-                    new User(TEST_NAME, TEST_EMAIL, TEST_AGE),
-                    new User(NEW_NAME, NEW_EMAIL, NEW_AGE)
-            ));
+            when(userRepository.findFirstPage(3)).thenReturn(List.of(first, second, third));
 
-            when(userMapper.usersToResponseDTOs(anyList()))
-                    .thenReturn(List.of(
-                            new UserResponseDTO(id1, TEST_NAME, TEST_EMAIL, TEST_AGE, now),
-                            new UserResponseDTO(id2, NEW_NAME, NEW_EMAIL, NEW_AGE, now)
-                    ));
+            UserPage page = userService.getUsers(null, null);
+
+            assertThat(page.users()).isEqualTo(List.of(first, second));
+            assertThat(UserCursor.decode(page.nextCursor()))
+                    .isEqualTo(new UserCursor(second.createdAt(), second.id()));
+            verify(userRepository, never()).findAll();
+            verifyNoInteractions(userMapper);
+        }
+
+        @Test
+        @DisplayName("Should continue after cursor and stop on last page")
+        void shouldContinueAfterCursor() {
+            UserCursor cursor = new UserCursor(OffsetDateTime.parse("2026-01-01T10:00:01Z"), UUID.randomUUID());
+            UserResponseDTO last = userWithKey(OffsetDateTime.parse("2026-01-01T10:00:02Z"));
 
+            when(userRepository.findPageAfter(cursor.createdAt(), cursor.id(), 4)).thenReturn(List.of(last));
 
-            List<UserResponseDTO> result = userService.getAllUsers();
+            UserPage page = userService.getUsers(cursor.encode(), 10);
 
-            assertThat(result.size() == 2);
-            assertThat(result.get(0).name()).isEqualTo(TEST_NAME);
-            assertThat(result.get(1).name()).isEqualTo(NEW_NAME);
+            assertThat(page.users().size()).isEqualTo(1);
+            assertThat(page.nextCursor()).isNull();
+        }
+
+        @Test
+        @DisplayName("Should search after cursor with the given filter")
+        void shouldSearchAfterCursor() {
+            UserSearchFilter filter = new UserSearchFilter("iv", null, 20, 30);
+            UserCursor cursor = new UserCursor(OffsetDateTime.parse("2026-01-01T10:00:01Z"), UUID.randomUUID());
+            UserResponseDTO first = userWithKey(OffsetDateTime.parse("2026-01-01T10:00:02Z"));
+            UserResponseDTO second = userWithKey(OffsetDateTime.parse("2026-01-01T10:00:03Z"));
+            UserResponseDTO third = userWithKey(OffsetDateTime.parse("2026-01-01T10:00:04Z"));
+
+            when(userRepository.search(filter, cursor.createdAt(), cursor.id(), 3)).thenReturn(List.of(first, second, third));
+
+            UserPage page = userService.searchUsers(filter, cursor.encode(), null);
+
+            assertThat(page.users()).isEqualTo(List.of(first, second));
+            assertThat(UserCursor.decode(page.nextCursor()))
+                    .isEqualTo(new UserCursor(second.createdAt(), second.id()));
+        }
+
+        @Test
+        @DisplayName("Should reject malformed cursor")
+        void shouldRejectMalformedCursor() {
+            assertThatThrownBy(() -> userService.getUsers("not-a-cursor", null))
+                    .isInstanceOf(IllegalArgumentException.class);
+            verifyNoInteractions(userRepository);
+        }
+
+        private UserResponseDTO userWithKey(OffsetDateTime createdAt) {
+            return new UserResponseDTO(UUID.randomUUID(), TEST_NAME, TEST_EMAIL, TEST_AGE, createdAt, 0L);
+        }
+    }
+
+    @Nested
+    @DisplayName("Export Users")
+    class ExportUsersTests {
+
+        @Test
+        @DisplayName("Should write one JSON object per line")
+        void shouldExportNdjson() throws Exception {
+            UserResponseDTO first = new UserResponseDTO(UUID.randomUUID(), TEST_NAME, TEST_EMAIL, TEST_AGE, OffsetDateTime.now(), 0L);
+            UserResponseDTO second = new UserResponseDTO(UUID.randomUUID(), NEW_NAME, NEW_EMAIL, NEW_AGE, OffsetDateTime.now(), 0L);
+            when(userRepository.streamAllForExport()).thenReturn(Stream.of(first, second));
+            when(objectMapper.writeValueAsString(first)).thenReturn("{\"name\":\"Ivan\"}");
+            when(objectMapper.writeValueAsString(second)).thenReturn("{\"name\":\"Petr\"}");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            long exported = userService.exportUsers(UserExportFormat.NDJSON, out);
+
+            assertThat(exported).isEqualTo(2L);
+            assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("{\"name\":\"Ivan\"}\n{\"name\":\"Petr\"}\n");
+        }
+
+        @Test
+        @DisplayName("Should write CSV with header and quoted fields")
+        void shouldExportCsv() throws Exception {
+            UUID id = UUID.randomUUID();
+            OffsetDateTime createdAt = OffsetDateTime.parse("2026-01-01T10:00:00Z");
+            when(userRepository.streamAllForExport()).thenReturn(Stream.of(
+                    new UserResponseDTO(id, "Ivanov, Ivan", TEST_EMAIL, null, createdAt, 0L)));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            userService.exportUsers(UserExportFormat.CSV, out);
+
+            assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(
+                    "id,name,email,age,createdAt\n" + id + ",\"Ivanov, Ivan\"," + TEST_EMAIL + ",,2026-01-01T10:00Z\n");
+            verifyNoInteractions(objectMapper);
+        }
+    }
+
+    @Nested
+    @DisplayName("Create Users Batch")
+    class CreateUsersBatchTests {
+
+        @BeforeEach
+        void setUpBatchSize() {
+            ReflectionTestUtils.setField(userService, "maxBatchSize", 3);
+        }
+
+        @Test
+        @DisplayName("Should create valid users and report invalid and duplicate ones per item")
+        void shouldCreateValidUsersOnly() {
+            UserRequestDTO valid = new UserRequestDTO(TEST_NAME, TEST_EMAIL, TEST_AGE);
+            UserRequestDTO invalid = new UserRequestDTO("", "invalid", -5);
+            UserRequestDTO duplicate = new UserRequestDTO(NEW_NAME, TEST_EMAIL, NEW_AGE);
+            UserResponseDTO created = new UserResponseDTO(UUID.randomUUID(), TEST_NAME, TEST_EMAIL, TEST_AGE,
+                    OffsetDateTime.now(), 0L);
+
+            // validate(valid) also runs, which a strict stub for another argument would report
+            lenient().doThrow(new ValidationException("Name cannot be empty")).when(userValidator).validate(invalid);
+            when(userRepository.findExistingEmails(List.of(TEST_EMAIL))).thenReturn(Set.of());
+            when(userMapper.requestDTOToUser(valid)).thenReturn(new User(TEST_NAME, TEST_EMAIL, TEST_AGE));
+            when(userRepository.saveAll(any())).thenAnswer(invocation -> {
+                // persist assigns the generated id
+                Iterable<User> users = invocation.getArgument(0);
+                users.forEach(user -> ReflectionTestUtils.setField(user, "id", created.id()));
+                return List.copyOf((Collection<User>) users);
+            });
+            when(userMapper.userToResponseDTO(any(User.class))).thenReturn(created);
+
+            List<UserBatchItemResult> results = userService.createUsers(List.of(valid, invalid, duplicate));
+
+            assertThat(results.get(0)).isEqualTo(UserBatchItemResult.created(0, created));
+            assertThat(results.get(1)).isEqualTo(UserBatchItemResult.rejected(1, "Name cannot be empty"));
+            assertThat(results.get(2).error()).contains("Email already in use");
+            verify(userValidator).validate(valid);
+            verify(userRepository, never()).existsByEmail(any());
+            verify(outboxEventRepository).saveAll(argThat(events -> ((List<OutboxEvent>) events).size() == 1));
+            verify(userRepository).flush();
+        }
+
+        @Test
+        @DisplayName("Should reject batch over the maximum size")
+        void shouldRejectOversizedBatch() {
+            UserRequestDTO request = new UserRequestDTO(TEST_NAME, TEST_EMAIL, TEST_AGE);
+
+            assertThatThrownBy(() -> userService.createUsers(List.of(request, request, request, request)))
+                    .isInstanceOf(IllegalArgumentException.class);
+            verifyNoInteractions(userRepository, outboxEventRepository);
         }
     }
 
@@ -196,27 +434,80 @@ public class UserServiceTest {
     class UpdateUserTests {
 
         @Test
-        @DisplayName("Should update user")
+        @DisplayName("Should update user in one statement")
         void shouldUpdateUser() {
             UUID id = UUID.randomUUID();
             OffsetDateTime createdAt = OffsetDateTime.now();
 
             UserRequestDTO request = new UserRequestDTO(NEW_NAME, NEW_EMAIL, NEW_AGE);
-            UserResponseDTO expectedResponse = new UserResponseDTO(id, NEW_NAME, NEW_EMAIL, NEW_AGE, createdAt);
-
-            User existingUser = new User(TEST_NAME, TEST_EMAIL, TEST_AGE);
+            UserResponseDTO expectedResponse = new UserResponseDTO(id, NEW_NAME, NEW_EMAIL, NEW_AGE, createdAt, 1L);
+            UserRow updatedRow = userRow(id, NEW_NAME, NEW_EMAIL);
 
             doNothing().when(userValidator).validate(request);
-            when(userRepository.findById(id)).thenReturn(Optional.of(existingUser));
-            when(userRepository.existsByEmail(NEW_EMAIL)).thenReturn(false);
-            when(userRepository.save(any(User.class))).thenReturn(new User(NEW_NAME, NEW_EMAIL, NEW_AGE));
-            when(userMapper.userToResponseDTO(any(User.class))).thenReturn(expectedResponse);
+            when(userRepository.updateReturning(id, NEW_NAME, NEW_EMAIL, NEW_AGE, null)).thenReturn(Optional.of(updatedRow));
+            when(userMapper.rowToResponseDTO(updatedRow)).thenReturn(expectedResponse);
 
-            UserResponseDTO result = userService.updateUser(id, request);
+            UserResponseDTO result = userService.updateUser(id, request, null);
 
             assertThat(result.name()).isEqualTo(NEW_NAME);
             verify(userValidator).validate(request);
-            verify(userRepository).save(any(User.class));
+            verify(userRepository, never()).findById(any());
+            verify(userRepository, never()).existsByEmail(any());
+            verify(outboxEventRepository).save(any(OutboxEvent.class));
+            verify(userEmailFilter).put(NEW_EMAIL);
+        }
+
+        @Test
+        @DisplayName("Should throw when updated user not found")
+        void shouldThrowWhenUpdatedUserNotFound() {
+            UUID id = UUID.randomUUID();
+            UserRequestDTO request = new UserRequestDTO(NEW_NAME, NEW_EMAIL, NEW_AGE);
+            when(userRepository.updateReturning(id, NEW_NAME, NEW_EMAIL, NEW_AGE, null)).thenReturn(Optional.empty());
+
+            assertThatThrownBy(() -> userService.updateUser(id, request, null))
+                    .isInstanceOf(UserNotFoundException.class);
+            verifyNoInteractions(outboxEventRepository);
+        }
+
+        @Test
+        @DisplayName("Should update user whose version matches the expected one")
+        void shouldUpdateUserWithExpectedVersion() {
+            UUID id = UUID.randomUUID();
+            UserRequestDTO request = new UserRequestDTO(NEW_NAME, NEW_EMAIL, NEW_AGE);
+            UserRow updatedRow = userRow(id, NEW_NAME, NEW_EMAIL);
+            UserResponseDTO expectedResponse = new UserResponseDTO(id, NEW_NAME, NEW_EMAIL, NEW_AGE, OffsetDateTime.now(), 4L);
+
+            when(userRepository.updateReturning(id, NEW_NAME, NEW_EMAIL, NEW_AGE, 3L)).thenReturn(Optional.of(updatedRow));
+            when(userMapper.rowToResponseDTO(updatedRow)).thenReturn(expectedResponse);
+
+            assertThat(userService.updateUser(id, request, 3L).version()).isEqualTo(4L);
+            verify(userRepository, never()).findVersionById(any());
+        }
+
+        @Test
+        @DisplayName("Should report a conflict when the user changed since the expected version")
+        void shouldThrowConflictWhenVersionIsStale() {
+            UUID id = UUID.randomUUID();
+            UserRequestDTO request = new UserRequestDTO(NEW_NAME, NEW_EMAIL, NEW_AGE);
+            when(userRepository.updateReturning(id, NEW_NAME, NEW_EMAIL, NEW_AGE, 3L)).thenReturn(Optional.empty());
+            when(userRepository.findVersionById(id)).thenReturn(Optional.of(4L));
+
+            assertThatThrownBy(() -> userService.updateUser(id, request, 3L))
+                    .isInstanceOf(ObjectOptimisticLockingFailureException.class);
+            verifyNoInteractions(outboxEventRepository);
+            verify(userEmailFilter, never()).put(any());
+        }
+
+        @Test
+        @DisplayName("Should throw not found when a conditionally updated user is gone")
+        void shouldThrowNotFoundWhenConditionalUpdateMissesUser() {
+            UUID id = UUID.randomUUID();
+            UserRequestDTO request = new UserRequestDTO(NEW_NAME, NEW_EMAIL, NEW_AGE);
+            when(userRepository.updateReturning(id, NEW_NAME, NEW_EMAIL, NEW_AGE, 3L)).thenReturn(Optional.empty());
+            when(userRepository.findVersionById(id)).thenReturn(Optional.empty());
+
+            assertThatThrownBy(() -> userService.updateUser(id, request, 3L))
+                    .isInstanceOf(UserNotFoundException.class);
         }
 
         @Test
@@ -228,28 +519,27 @@ public class UserServiceTest {
             doThrow(new ValidationException("Name cannot be empty"))
                     .when(userValidator).validate(request);
 
-            assertThatThrownBy(() -> userService.updateUser(id, request))
+            assertThatThrownBy(() -> userService.updateUser(id, request, null))
                     .isInstanceOf(ValidationException.class)
                     .hasMessageContaining("Name cannot be empty");
 
-            verify(userRepository, never()).findById(any());
-            verify(userRepository, never()).save(any());
+            verify(userRepository, never()).updateReturning(any(), any(), any(), any(), any());
         }
 
         @Test
-        @DisplayName("Should throw when updating to existing email")
+        @DisplayName("Should leave a taken email to the unique constraint")
         void shouldThrowWhenUpdatingToExistingEmail() {
             UUID id = UUID.randomUUID();
             UserRequestDTO request = new UserRequestDTO(TEST_NAME, NEW_EMAIL, TEST_AGE);
-            User existingUser = new User(TEST_NAME, TEST_EMAIL, TEST_AGE);
 
             doNothing().when(userValidator).validate(request);
-            when(userRepository.findById(id)).thenReturn(Optional.of(existingUser));
-            when(userRepository.existsByEmail(NEW_EMAIL)).thenReturn(true);
+            when(userRepository.updateReturning(id, TEST_NAME, NEW_EMAIL, TEST_AGE, null))
+                    .thenThrow(new DataIntegrityViolationException("duplicate key value violates unique constraint"));
 
-            assertThatThrownBy(() -> userService.updateUser(id, request))
-                    .isInstanceOf(IllegalArgumentException.class)
-                    .hasMessageContaining("Email already in use");
+            assertThatThrownBy(() -> userService.updateUser(id, request, null))
+                    .isInstanceOf(DataIntegrityViolationException.class);
+            verify(userRepository, never()).existsByEmail(any());
+            verifyNoInteractions(outboxEventRepository);
         }
     }
 
@@ -258,19 +548,23 @@ public class UserServiceTest {
     class DeleteUserTests {
 
         @Test
-        @DisplayName("Should delete existing user")
+        @DisplayName("Should delete existing user in one statement")
         void shouldDeleteUser() {
             UUID id = UUID.randomUUID();
-            User user = new User(TEST_NAME, TEST_EMAIL, TEST_AGE);
-            when(userRepository.findById(id)).thenReturn(Optional.of(user));
-            when(objectMapper.writeValueAsString(any())).thenReturn("{}");
+            UserRow deletedRow = userRow(id, TEST_NAME, TEST_EMAIL);
+            when(userRepository.deleteReturning(id)).thenReturn(Optional.of(deletedRow));
+            when(objectMapper.writeValueAsBytes(any())).thenReturn(new byte[0]);
             when(outboxEventRepository.save(any(OutboxEvent.class)))
                     .thenAnswer(invocation -> invocation.getArgument(0));
 
             assertThatCode(() -> userService.deleteUser(id)).doesNotThrowAnyException();
 
-            verify(userRepository).deleteById(id);
-            verify(outboxEventRepository).save(any(OutboxEvent.class));
+            ArgumentCaptor<OutboxEvent> eventCaptor = ArgumentCaptor.forClass(OutboxEvent.class);
+            verify(outboxEventRepository).save(eventCaptor.capture());
+            assertThat(eventCaptor.getValue().getAggregateId()).isEqualTo(id);
+            assertThat(eventCaptor.getValue().getEventType()).isEqualTo("DELETED");
+            verify(userRepository, never()).findById(any());
+            verify(userRepository, never()).deleteById(any());
         }
 
         @Test
@@ -278,14 +572,21 @@ public class UserServiceTest {
         void shouldThrowWhenNotFound() {
             UUID id = UUID.randomUUID();
 
-            when(userRepository.findById(id)).thenReturn(Optional.empty());
+            when(userRepository.deleteReturning(id)).thenReturn(Optional.empty());
 
             assertThatThrownBy(() -> userService.deleteUser(id))
                     .isInstanceOf(UserNotFoundException.class);
 
-            verify(userRepository, never()).deleteById(any());
             verify(outboxEventRepository, never()).save(any());
         }
     }
 
+    // Stubs the returned mock, so call it before the when(...) that returns the row, never inside it
+    private static UserRow userRow(UUID id, String name, String email) {
+        UserRow row = mock(UserRow.class);
+        lenient().when(row.getId()).thenReturn(id);
+        lenient().when(row.getName()).thenReturn(name);
+        lenient().when(row.getEmail()).thenReturn(email);
+        return row;
+    }
 }